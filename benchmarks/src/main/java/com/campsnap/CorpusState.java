@@ -0,0 +1,60 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A generated corpus shared by the benchmarks of one trial. Benchmarks take
+ * the next photo in turn, so the OS cache sees the corpus rather than one
+ * file over and over.
+ */
+@State(Scope.Thread)
+public class CorpusState {
+    private static final int PHOTO_COUNT = 32;
+
+    @Param({"SMALL", "LARGE"})
+    public SyntheticCorpus.Size size;
+
+    @Param({"PLAIN", "THUMBNAIL", "MAKER_NOTE"})
+    public SyntheticCorpus.Variant variant;
+
+    Path directory;
+    List<File> files;
+    byte[][] contents;
+    ScannedPhoto[] photos;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("campsnap-bench");
+        files = SyntheticCorpus.generate(directory, size, variant, PHOTO_COUNT);
+        contents = new byte[files.size()][];
+        photos = new ScannedPhoto[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            contents[i] = Files.readAllBytes(files.get(i).toPath());
+            photos[i] = PhotoScanner.readPhoto(files.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        SyntheticCorpus.delete(directory);
+    }
+
+    // Index of the photo the next operation works on
+    int nextIndex() {
+        int index = next;
+        next = (next + 1) % files.size();
+        return index;
+    }
+}
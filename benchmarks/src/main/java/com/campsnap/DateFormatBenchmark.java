@@ -0,0 +1,51 @@
+package com.campsnap;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting one date, the way the preview once did for every photo, the way
+ * the table renderer does now, and the way the writer formats EXIF dates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateFormatBenchmark {
+    private final SimpleDateFormat sharedFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private long time = 1_546_336_800_000L;
+
+    // A different second each call, so nothing can be cached between calls
+    private long nextTime() {
+        time += 1_000L;
+        return time;
+    }
+
+    @Benchmark
+    public String simpleDateFormatPerPhoto() {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(nextTime()));
+    }
+
+    @Benchmark
+    public String simpleDateFormatShared() {
+        return sharedFormat.format(new Date(nextTime()));
+    }
+
+    @Benchmark
+    public String exifDateFormatter() {
+        return PhotoWriter.formatExifDate(nextTime());
+    }
+}
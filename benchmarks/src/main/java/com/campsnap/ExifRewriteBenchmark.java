@@ -0,0 +1,106 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing a shifted date, from the library's full rewrite down to the
+ * in-place patch the writer tries first.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExifRewriteBenchmark {
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    @State(Scope.Thread)
+    public static class Output {
+        Path directory;
+        File destination;
+        PhotoWriter writer;
+        String[] originalDates;
+        boolean shifted;
+
+        @Setup(Level.Trial)
+        public void setUp(CorpusState corpus) throws IOException {
+            directory = Files.createTempDirectory("campsnap-bench-out");
+            destination = directory.resolve("out.jpg").toFile();
+            writer = new PhotoWriter(DAY_MILLIS, new StageTimings());
+            originalDates = new String[corpus.photos.length];
+            for (int i = 0; i < originalDates.length; i++) {
+                originalDates[i] = PhotoWriter.formatExifDate(corpus.photos[i].getOriginalTime());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            SyntheticCorpus.delete(directory);
+        }
+    }
+
+    // What the writer falls back to: parse everything, rewrite everything
+    @Benchmark
+    public void exifRewriterToStream(CorpusState corpus, Output output)
+            throws ImageReadException, ImageWriteException, IOException {
+        byte[] bytes = corpus.contents[corpus.nextIndex()];
+        JpegImageMetadata metadata = (JpegImageMetadata) Imaging.getMetadata(bytes);
+        TiffImageMetadata exif = metadata.getExif();
+        TiffOutputSet outputSet = exif.getOutputSet();
+        TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+        exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, "2020:01:01 00:00:00");
+        try (OutputStream out = Files.newOutputStream(output.destination.toPath())) {
+            new ExifRewriter().updateExifMetadataLossless(bytes, out, outputSet);
+        }
+    }
+
+    // Rebuilt EXIF segment spliced onto a channel copy of the image data
+    @Benchmark
+    public void splicedCopy(CorpusState corpus, Output output)
+            throws ImageReadException, ImageWriteException, IOException {
+        output.writer.copyTo(corpus.photos[corpus.nextIndex()], output.destination);
+    }
+
+    // Overwrites only the date bytes, alternating between the shifted and original date
+    @Benchmark
+    public boolean patchInPlace(CorpusState corpus, Output output) throws IOException {
+        int index = corpus.nextIndex();
+        ScannedPhoto photo = corpus.photos[index];
+        String original = output.originalDates[index];
+        String shifted = output.writer.formatNewDate(photo);
+        if (index == 0) {
+            output.shifted = !output.shifted;
+        }
+        return output.shifted
+            ? ExifDatePatcher.patch(photo.getFile(), photo.getDateOffset(), original, shifted)
+            : ExifDatePatcher.patch(photo.getFile(), photo.getDateOffset(), shifted, original);
+    }
+}
@@ -0,0 +1,54 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+
+/**
+ * Reading the original date during a scan. The header reader is what the
+ * scanner tries first; the two libraries are its fallback and the write path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataReadBenchmark {
+
+    @Benchmark
+    public ExifDateReader.ExifDate headerReader(CorpusState corpus) throws IOException {
+        return ExifDateReader.read(corpus.files.get(corpus.nextIndex()));
+    }
+
+    @Benchmark
+    public Metadata metadataExtractor(CorpusState corpus) throws ImageProcessingException, IOException {
+        return ImageMetadataReader.readMetadata(corpus.files.get(corpus.nextIndex()));
+    }
+
+    @Benchmark
+    public ImageMetadata commonsImaging(CorpusState corpus) throws ImageReadException, IOException {
+        return Imaging.getMetadata(corpus.files.get(corpus.nextIndex()));
+    }
+
+    // The full scan of one photo, including the fallback decision
+    @Benchmark
+    public ScannedPhoto scanPhoto(CorpusState corpus) {
+        File file = corpus.files.get(corpus.nextIndex());
+        return PhotoScanner.readPhoto(file);
+    }
+}
@@ -0,0 +1,54 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replacing an original photo. The temp file and rename alone show the cost
+ * of the file system work; the full update adds the EXIF rewrite on top.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplaceBenchmark {
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final PhotoWriter writer = new PhotoWriter(DAY_MILLIS, new StageTimings());
+    }
+
+    @Benchmark
+    public void tempFileAndMove(CorpusState corpus) throws IOException {
+        int index = corpus.nextIndex();
+        File file = corpus.files.get(index);
+        File tempFile = File.createTempFile(".temp_", "_" + file.getName(), file.getParentFile());
+        Files.write(tempFile.toPath(), corpus.contents[index]);
+        Files.move(tempFile.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Shifts from the scanned date every time, so each call writes the same bytes
+    @Benchmark
+    public void updateOriginalWithoutPatch(CorpusState corpus, Writer writer)
+            throws IOException, ImageReadException, ImageWriteException {
+        writer.writer.updateOriginal(corpus.photos[corpus.nextIndex()], false);
+    }
+}
@@ -0,0 +1,144 @@
+package com.campsnap;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.JpegImageData;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * Generates JPEG photos with EXIF dates for the benchmarks, shaped like what
+ * a Camp Snap card holds. The image data is the same for every photo of a
+ * size, so only the metadata differs between files.
+ */
+public final class SyntheticCorpus {
+    public enum Size {
+        // Preview sized and full Camp Snap resolution
+        SMALL(640, 480),
+        LARGE(3264, 2448);
+
+        final int width;
+        final int height;
+
+        Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public enum Variant {
+        // Only the date tags the app reads and writes
+        PLAIN,
+        // An IFD1 thumbnail after the EXIF directory, as most cameras write
+        THUMBNAIL,
+        // A large opaque maker note inside the EXIF directory
+        MAKER_NOTE
+    }
+
+    private static final int THUMBNAIL_WIDTH = 160;
+    private static final int THUMBNAIL_HEIGHT = 120;
+    private static final int MAKER_NOTE_SIZE = 24 * 1024;
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Writes count photos into dir and returns them in name order. Each photo
+     * has DateTime, DateTimeOriginal and DateTimeDigitized a day apart.
+     */
+    public static List<File> generate(Path dir, Size size, Variant variant, int count) throws IOException {
+        Files.createDirectories(dir);
+        byte[] image = encodeJpeg(size.width, size.height, 1);
+        byte[] thumbnail = variant == Variant.THUMBNAIL ? encodeJpeg(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, 2) : null;
+
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = dir.resolve(String.format("IMG_%04d.jpg", i)).toFile();
+            String date = String.format("2019:01:%02d 10:%02d:%02d", 1 + i % 28, i / 60 % 60, i % 60);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()))) {
+                new ExifRewriter().updateExifMetadataLossless(image, out, metadata(date, variant, thumbnail));
+            } catch (ImageReadException | ImageWriteException e) {
+                throw new IOException("Could not write EXIF for " + file.getName(), e);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    // Removes a generated corpus and its directory
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static TiffOutputSet metadata(String date, Variant variant, byte[] thumbnail) throws ImageWriteException {
+        TiffOutputSet set = new TiffOutputSet();
+        TiffOutputDirectory root = set.getOrCreateRootDirectory();
+        root.add(TiffTagConstants.TIFF_TAG_MAKE, "Camp Snap");
+        root.add(TiffTagConstants.TIFF_TAG_DATE_TIME, date);
+
+        TiffOutputDirectory exif = set.getOrCreateExifDirectory();
+        exif.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, date);
+        exif.add(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED, date);
+
+        if (variant == Variant.MAKER_NOTE) {
+            byte[] makerNote = new byte[MAKER_NOTE_SIZE];
+            new Random(3).nextBytes(makerNote);
+            exif.add(ExifTagConstants.EXIF_TAG_MAKER_NOTE, makerNote);
+        } else if (variant == Variant.THUMBNAIL) {
+            TiffOutputDirectory thumbnailDirectory =
+                new TiffOutputDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_DIR_1, set.byteOrder);
+            thumbnailDirectory.setJpegImageData(new JpegImageData(0, thumbnail.length, thumbnail));
+            set.addDirectory(thumbnailDirectory);
+        }
+        return set;
+    }
+
+    // A smooth gradient with some noise, so the encoded size is close to a real photo's
+    private static byte[] encodeJpeg(int width, int height, long seed) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255 / width + random.nextInt(24)) & 0xFF;
+                int green = (y * 255 / height + random.nextInt(24)) & 0xFF;
+                int blue = ((x + y) * 127 / (width + height) + random.nextInt(24)) & 0xFF;
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
@@ -1,3 +1,24 @@
 @echo off
-java -jar camp-snap-time-taken-updater.jar
-pause
\ No newline at end of file
+rem Starts from a class data sharing archive, which the first run on this Java creates
+rem and the next run after the jar is replaced creates again
+set JAR=camp-snap-time-taken-updater.jar
+set ARCHIVE=camp-snap-time-taken-updater.jsa
+set STAMP=%ARCHIVE%.stamp
+
+rem The jar's date and size when the archive was made, since cmd can't compare file dates
+for %%F in (%JAR%) do set JAR_STAMP=%%~tzF
+rem An archive without a stamp came in the release folder, made from this jar
+if exist %ARCHIVE% if not exist %STAMP% (echo %JAR_STAMP%)>%STAMP%
+set ARCHIVE_STAMP=
+if exist %STAMP% set /p ARCHIVE_STAMP=<%STAMP%
+
+if exist %ARCHIVE% if "%ARCHIVE_STAMP%"=="%JAR_STAMP%" (
+    java -XX:SharedArchiveFile=%ARCHIVE% -Xlog:cds=off -Xlog:cds+dynamic=off -jar %JAR%
+    goto end
+)
+if exist %ARCHIVE% del %ARCHIVE%
+(echo %JAR_STAMP%)>%STAMP%
+java -XX:ArchiveClassesAtExit=%ARCHIVE% -Xlog:cds=off -Xlog:cds+dynamic=off -jar %JAR%
+
+:end
+pause
@@ -1,2 +1,10 @@
 #!/bin/bash
-java -jar camp-snap-time-taken-updater.jar
\ No newline at end of file
+# Starts from a class data sharing archive, which the first run on this Java creates
+# and the next run after the jar is replaced creates again
+JAR=camp-snap-time-taken-updater.jar
+ARCHIVE=camp-snap-time-taken-updater.jsa
+if [ -f "$ARCHIVE" ] && [ ! "$JAR" -nt "$ARCHIVE" ]; then
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off -jar "$JAR"
+fi
+rm -f "$ARCHIVE"
+exec java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=off -Xlog:cds+dynamic=off -jar "$JAR"
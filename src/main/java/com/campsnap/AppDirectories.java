@@ -0,0 +1,29 @@
+package com.campsnap;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Where the application keeps its own files.
+ */
+public final class AppDirectories {
+    private AppDirectories() {
+    }
+
+    // The per-user configuration directory for this application
+    public static Path configDirectory() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        String home = System.getProperty("user.home");
+        Path configDir;
+        if (os.contains("win") && System.getenv("APPDATA") != null) {
+            configDir = Paths.get(System.getenv("APPDATA"));
+        } else if (os.contains("mac")) {
+            configDir = Paths.get(home, "Library", "Application Support");
+        } else if (System.getenv("XDG_CONFIG_HOME") != null) {
+            configDir = Paths.get(System.getenv("XDG_CONFIG_HOME"));
+        } else {
+            configDir = Paths.get(home, ".config");
+        }
+        return configDir.resolve("CampSnapTimeTakenUpdater");
+    }
+}
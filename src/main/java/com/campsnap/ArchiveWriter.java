@@ -0,0 +1,457 @@
+package com.campsnap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * Writes shifted photos into a single ZIP or TAR file instead of a folder.
+ *
+ * The batch writer's threads prepare entries in parallel and hand them over
+ * through a bounded queue to one thread that appends them to the archive in
+ * turn, so a slow archive holds the others back rather than letting entries
+ * pile up in memory. An entry is a header held in memory followed by the rest
+ * of its source file, which is read once, straight from disk, when the entry
+ * is written, so photos are never buffered whole.
+ *
+ * ZIP entries are stored without compression, as JPEG data doesn't compress.
+ * Their checksum and size are taken as the data is written and then filled in
+ * to the entry's header, which the archive, being a file, can seek back to.
+ * Archives past 4 GB or 65535 photos get ZIP64 records.
+ */
+public class ArchiveWriter implements Closeable {
+    public enum Format {
+        ZIP,
+        TAR;
+
+        // The format for a file name ending in .zip or .tar
+        public static Format forName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".zip")) {
+                return ZIP;
+            }
+            if (name.endsWith(".tar")) {
+                return TAR;
+            }
+            throw new IllegalArgumentException("Archives must end in .zip or .tar: " + fileName);
+        }
+    }
+
+    private static final int TAR_BLOCK = 512;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private static final int ZIP_LOCAL_HEADER = 0x04034b50;
+    private static final int ZIP_CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP_END = 0x06054b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    // Version 2.0 for stored entries, 4.5 where ZIP64 fields are used
+    private static final short ZIP_VERSION = 20;
+    private static final short ZIP64_VERSION = 45;
+    // Names are UTF-8
+    private static final short ZIP_UTF8_FLAG = 0x0800;
+    private static final long ZIP_MAX_32 = 0xFFFFFFFFL;
+    private static final int ZIP_MAX_16 = 0xFFFF;
+
+    /**
+     * One photo on its way into the archive: head, then source from
+     * sourceOffset to its end when source is not null. Completed once the
+     * photo is in the archive, or with the error that kept it out.
+     */
+    private static class Entry {
+        static final Entry END = new Entry(null, new byte[0], null, 0, 0);
+
+        final String name;
+        final byte[] head;
+        final File source;
+        final long sourceOffset;
+        final long lastModified;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Entry(String name, byte[] head, File source, long sourceOffset, long lastModified) {
+            this.name = name;
+            this.head = head;
+            this.source = source;
+            this.sourceOffset = sourceOffset;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * What the ZIP central directory needs of an entry written earlier.
+     */
+    private static class ZipRecord {
+        final byte[] name;
+        final int dosTime;
+        final int crc;
+        final int size;
+        final long offset;
+
+        ZipRecord(byte[] name, int dosTime, int crc, int size, long offset) {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    private final File file;
+    private final Format format;
+    private final StageTimings timings;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writerThread;
+    private final FileChannel out;
+    private final Set<String> names = new HashSet<>();
+    private final List<ZipRecord> zipRecords = new ArrayList<>();
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+    private volatile IOException failure;
+    private volatile boolean lost;
+
+    /**
+     * Creates the archive at file and starts the thread writing it. At most
+     * queueCapacity entries wait to be written at any time.
+     */
+    public ArchiveWriter(File file, Format format, int queueCapacity, StageTimings timings) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.timings = timings;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.out = FileChannel.open(file.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        writerThread = new Thread(this::writeEntries, "archive-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Adds an entry made of head followed by source from sourceOffset on, or
+     * of head alone if source is null. Returns once the entry is in the
+     * archive, so a photo is only reported as copied when it was written;
+     * other threads prepare their entries meanwhile. Throws if the archive
+     * failed, for this entry or an earlier one.
+     */
+    public void add(String name, byte[] head, File source, long sourceOffset, long lastModified)
+            throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new IOException("The archive could not be written: " + failed.getMessage(), failed);
+        }
+
+        Entry entry = new Entry(name, head, source, sourceOffset, lastModified);
+        try {
+            queue.put(entry);
+            entry.written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while adding " + name + " to the archive");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not add " + name + " to the archive: " + e.getCause().getMessage(),
+                e.getCause());
+        }
+    }
+
+    /**
+     * Waits for every queued entry to be written and finishes the archive.
+     * If an entry failed, the archive is still finished with the entries
+     * written before it, which are the ones add() returned for, and the error
+     * is thrown. If even that fails, the archive is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writerThread.isAlive()) {
+            try {
+                queue.put(Entry.END);
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while finishing the archive");
+            }
+        }
+        if (lost) {
+            throw new IOException("The archive could not be finished and was deleted: " + failure.getMessage(),
+                failure);
+        }
+        if (failure != null) {
+            throw new IOException("The archive holds only the photos added before this error: "
+                + failure.getMessage(), failure);
+        }
+    }
+
+    private void writeEntries() {
+        try {
+            while (true) {
+                Entry entry = queue.take();
+                if (entry == Entry.END) {
+                    break;
+                }
+                // After a failure entries are still taken, so threads adding them don't wait forever
+                if (failure != null) {
+                    entry.written.completeExceptionally(failure);
+                    continue;
+                }
+                long start = -1;
+                try {
+                    start = out.position();
+                    write(entry);
+                    entry.written.complete(null);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    failure = e;
+                    entry.written.completeExceptionally(e);
+                    if (start >= 0 && !lost) {
+                        // Cut off the part written, so the archive can still be finished with the entries before it
+                        try {
+                            out.truncate(start);
+                            out.position(start);
+                        } catch (IOException truncateError) {
+                            truncateError.printStackTrace();
+                            lost = true;
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Interrupted while writing the archive");
+            for (Entry entry; (entry = queue.poll()) != null; ) {
+                entry.written.completeExceptionally(failure);
+            }
+        }
+
+        try {
+            if (!lost) {
+                finish();
+            }
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (failure == null) {
+                failure = e;
+            }
+            lost = true;
+        }
+        if (lost) {
+            // Without its end the archive is of no use
+            try {
+                out.close();
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        StageTimings.Span span = timings.start(StageTimings.Stage.WRITE);
+        String name = PhotoFiles.uniqueName(names, entry.name);
+        long size = format == Format.ZIP ? writeZipEntry(name, entry) : writeTarEntry(name, entry);
+        timings.end(span, file, size);
+    }
+
+    private long writeZipEntry(String name, Entry entry) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int dosTime = dosTime(entry.lastModified);
+        long offset = out.position();
+        ByteBuffer header = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ZIP_LOCAL_HEADER).putShort(ZIP_VERSION).putShort(ZIP_UTF8_FLAG)
+            .putShort((short) 0).putInt(dosTime)
+            // Checksum and sizes, filled in below once the data has been written
+            .putInt(0).putInt(0).putInt(0)
+            .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes).flip();
+        writeFully(header);
+
+        CRC32 crc = new CRC32();
+        crc.update(entry.head);
+        writeFully(ByteBuffer.wrap(entry.head));
+        long size = entry.head.length;
+        if (entry.source != null) {
+            size += copyChecksummed(entry.source, entry.sourceOffset, crc);
+        }
+        if (size >= ZIP_MAX_32) {
+            throw new IOException(name + " is too large for a ZIP archive");
+        }
+
+        ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        sizes.putInt((int) crc.getValue()).putInt((int) size).putInt((int) size).flip();
+        while (sizes.hasRemaining()) {
+            out.write(sizes, offset + 14 + sizes.position());
+        }
+        zipRecords.add(new ZipRecord(nameBytes, dosTime, (int) crc.getValue(), (int) size, offset));
+        return size;
+    }
+
+    private long writeTarEntry(String name, Entry entry) throws IOException {
+        if (entry.source == null) {
+            writeFully(ByteBuffer.wrap(tarHeader(name, entry.head.length, entry.lastModified)));
+            writeFully(ByteBuffer.wrap(entry.head));
+            writeFully(ByteBuffer.allocate(tarPadding(entry.head.length)));
+            return entry.head.length;
+        }
+
+        try (FileChannel in = FileChannel.open(entry.source.toPath(), StandardOpenOption.READ)) {
+            // The size goes in the header, so the data is copied as the kernel can, without being looked at
+            long count = in.size() - entry.sourceOffset;
+            long size = entry.head.length + count;
+            writeFully(ByteBuffer.wrap(tarHeader(name, size, entry.lastModified)));
+            writeFully(ByteBuffer.wrap(entry.head));
+            long transferred = 0;
+            while (transferred < count) {
+                long n = in.transferTo(entry.sourceOffset + transferred, count - transferred, out);
+                if (n <= 0) {
+                    throw new IOException(entry.source.getName() + " changed while it was archived");
+                }
+                transferred += n;
+            }
+            writeFully(ByteBuffer.allocate(tarPadding(size)));
+            return size;
+        }
+    }
+
+    // Writes the end of the archive: the ZIP central directory, or two empty TAR blocks
+    private void finish() throws IOException {
+        if (format == Format.TAR) {
+            writeFully(ByteBuffer.allocate(TAR_BLOCK * 2));
+            return;
+        }
+
+        long directoryOffset = out.position();
+        for (ZipRecord record : zipRecords) {
+            boolean zip64 = record.offset >= ZIP_MAX_32;
+            short version = zip64 ? ZIP64_VERSION : ZIP_VERSION;
+            ByteBuffer header = ByteBuffer.allocate(46 + record.name.length + (zip64 ? 12 : 0))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(ZIP_CENTRAL_HEADER).putShort(version).putShort(version).putShort(ZIP_UTF8_FLAG)
+                .putShort((short) 0).putInt(record.dosTime).putInt(record.crc).putInt(record.size).putInt(record.size)
+                .putShort((short) record.name.length).putShort((short) (zip64 ? 12 : 0))
+                // Comment length, disk, internal and external attributes
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt(zip64 ? -1 : (int) record.offset).put(record.name);
+            if (zip64) {
+                header.putShort((short) 1).putShort((short) 8).putLong(record.offset);
+            }
+            header.flip();
+            writeFully(header);
+        }
+        long directorySize = out.position() - directoryOffset;
+        long count = zipRecords.size();
+
+        if (count >= ZIP_MAX_16 || directoryOffset >= ZIP_MAX_32 || directorySize >= ZIP_MAX_32) {
+            long zip64End = out.position();
+            ByteBuffer records = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+            records.putInt(ZIP64_END).putLong(44).putShort(ZIP64_VERSION).putShort(ZIP64_VERSION)
+                .putInt(0).putInt(0).putLong(count).putLong(count).putLong(directorySize).putLong(directoryOffset);
+            records.putInt(ZIP64_LOCATOR).putInt(0).putLong(zip64End).putInt(1).flip();
+            writeFully(records);
+        }
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(ZIP_END).putShort((short) 0).putShort((short) 0)
+            .putShort((short) Math.min(count, ZIP_MAX_16)).putShort((short) Math.min(count, ZIP_MAX_16))
+            .putInt((int) Math.min(directorySize, ZIP_MAX_32)).putInt((int) Math.min(directoryOffset, ZIP_MAX_32))
+            .putShort((short) 0).flip();
+        writeFully(end);
+    }
+
+    // Copies source from position to its end into the archive, adding it to crc on the way
+    private long copyChecksummed(File source, long position, CRC32 crc) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+            long pos = position;
+            while (true) {
+                buffer.clear();
+                int n = in.read(buffer, pos);
+                if (n < 0) {
+                    break;
+                }
+                crc.update(copyBuffer, 0, n);
+                writeFully(ByteBuffer.wrap(copyBuffer, 0, n));
+                pos += n;
+            }
+            return pos - position;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    // The MS-DOS date and time ZIP stores, in local time; earlier than 1980 is stored as 1980
+    private static int dosTime(long time) {
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (local.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (local.getYear() - 1980) << 25 | local.getMonthValue() << 21 | local.getDayOfMonth() << 16
+            | local.getHour() << 11 | local.getMinute() << 5 | local.getSecond() >> 1;
+    }
+
+    private static int tarPadding(long size) {
+        return (int) ((TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK);
+    }
+
+    // A ustar header for a regular file
+    private static byte[] tarHeader(String name, long size, long lastModified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IOException("File name too long for a TAR archive: " + name);
+        }
+        byte[] header = new byte[TAR_BLOCK];
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, lastModified / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // The checksum is taken with its own field as spaces, then stored as six digits, a NUL and a space
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xFF;
+        }
+        octal(header, 148, 7, sum);
+        return header;
+    }
+
+    // Writes value as zero-padded octal digits filling length - 1 bytes, then a NUL
+    private static void octal(byte[] header, int offset, int length, long value) throws IOException {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IOException("Value too large for a TAR header: " + value);
+        }
+        for (int i = 0; i < length - 1; i++) {
+            int digit = i - (length - 1 - digits.length());
+            header[offset + i] = (byte) (digit < 0 ? '0' : digits.charAt(digit));
+        }
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,318 @@
+package com.campsnap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-ahead journal for updating original photos, so an interrupted batch
+ * can be resumed without shifting any photo twice.
+ *
+ * The planned new date of every photo is written and synced before the first
+ * photo is touched. Completed and failed photos are then appended as they
+ * finish and synced in groups, either every few hundred records or every
+ * fraction of a second. A photo whose "done" record was lost in a crash still
+ * has its plan, and resuming compares the plan with the date in the file.
+ *
+ * One line per record:
+ * <pre>
+ * BATCH  timeToAdd  patchInPlace  dateTags  rerunMode
+ * P      newDate    shift      path
+ * D      path
+ * F      path       message
+ * END
+ * </pre>
+ * Journals written before dateTags was added shift only the date taken, and
+ * those written before rerunMode was added ignore shift records. Plans
+ * written before the shift was added moved every photo by timeToAdd.
+ */
+public class BatchJournal implements Closeable {
+    private static final int GROUP_COMMIT_RECORDS = 256;
+    private static final long GROUP_COMMIT_MILLIS = 200;
+
+    private final Path path;
+    private final long timeToAdd;
+    private final boolean patchInPlace;
+    private final Set<DateTag> dateTags;
+    private final RerunMode rerunMode;
+    private final Map<String, String> plannedDates;
+    private final Map<String, Long> plannedShifts;
+    private final Set<String> doneFiles;
+
+    private FileOutputStream stream;
+    private Writer out;
+    private int uncommittedRecords;
+    private ScheduledExecutorService committer;
+
+    private BatchJournal(Path path, long timeToAdd, boolean patchInPlace, Set<DateTag> dateTags,
+            RerunMode rerunMode, Map<String, String> plannedDates, Map<String, Long> plannedShifts,
+            Set<String> doneFiles) {
+        this.path = path;
+        this.timeToAdd = timeToAdd;
+        this.patchInPlace = patchInPlace;
+        this.dateTags = dateTags;
+        this.rerunMode = rerunMode;
+        this.plannedDates = plannedDates;
+        this.plannedShifts = plannedShifts;
+        this.doneFiles = doneFiles;
+    }
+
+    // The journal used by the window, under the user's configuration directory
+    public static Path defaultPath() {
+        return AppDirectories.configDirectory().resolve("update-journal.log");
+    }
+
+    /**
+     * Starts a new journal at path, replacing any previous one, with a plan
+     * for every photo that has an original date and is not skipped by the
+     * writer. The plan is synced to disk before this returns.
+     */
+    public static BatchJournal create(Path path, Iterable<ScannedPhoto> photos, PhotoWriter writer,
+            boolean patchInPlace) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Map<String, String> plannedDates = new LinkedHashMap<>();
+        Map<String, Long> plannedShifts = new HashMap<>();
+        BatchJournal journal = new BatchJournal(path, writer.getTimeToAdd(), patchInPlace, writer.getDateTags(),
+            writer.getRerunMode(), plannedDates, plannedShifts, new HashSet<>());
+
+        journal.openForAppend(false);
+        journal.out.write("BATCH\t" + writer.getTimeToAdd() + "\t" + patchInPlace + "\t"
+            + DateTag.format(writer.getDateTags()) + "\t" + writer.getRerunMode().getKey() + "\n");
+        for (ScannedPhoto photo : photos) {
+            if (photo.hasOriginalDate() && !writer.skips(photo)) {
+                String file = photo.getFile().getAbsolutePath();
+                String newDate = writer.formatNewDate(photo);
+                long shift = writer.shiftFor(photo);
+                plannedDates.put(file, newDate);
+                plannedShifts.put(file, shift);
+                journal.out.write("P\t" + newDate + "\t" + shift + "\t" + escape(file) + "\n");
+            }
+        }
+        journal.commit();
+        journal.startCommitter();
+        return journal;
+    }
+
+    /**
+     * Reopens an unfinished journal. Returns null if there is no journal at
+     * path or the batch it describes was finished.
+     */
+    public static BatchJournal resume(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        long timeToAdd = 0;
+        boolean patchInPlace = true;
+        Set<DateTag> dateTags = DateTag.ORIGINAL_ONLY;
+        RerunMode rerunMode = RerunMode.IGNORE;
+        boolean started = false;
+        Map<String, String> plannedDates = new LinkedHashMap<>();
+        Map<String, Long> plannedShifts = new HashMap<>();
+        Set<String> doneFiles = new HashSet<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                try {
+                    switch (fields[0]) {
+                        case "BATCH":
+                            String[] batch = line.split("\t");
+                            timeToAdd = Long.parseLong(batch[1]);
+                            patchInPlace = Boolean.parseBoolean(batch[2]);
+                            dateTags = batch.length > 3 ? DateTag.parse(batch[3]) : DateTag.ORIGINAL_ONLY;
+                            rerunMode = batch.length > 4 ? RerunMode.parse(batch[4]) : RerunMode.IGNORE;
+                            started = true;
+                            break;
+                        case "P":
+                            String[] plan = line.split("\t");
+                            if (plan.length > 3) {
+                                String file = unescape(plan[3]);
+                                plannedShifts.put(file, Long.parseLong(plan[2]));
+                                plannedDates.put(file, plan[1]);
+                            } else {
+                                plannedDates.put(unescape(plan[2]), plan[1]);
+                            }
+                            break;
+                        case "D":
+                            doneFiles.add(unescape(fields[1]));
+                            break;
+                        case "END":
+                            return null;
+                        default:
+                            // Failures are retried on resume, and a torn last line is ignored
+                            break;
+                    }
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    // A line cut short by a crash
+                }
+            }
+        }
+        if (!started) {
+            return null;
+        }
+
+        BatchJournal journal = new BatchJournal(path, timeToAdd, patchInPlace, dateTags, rerunMode, plannedDates,
+            plannedShifts, doneFiles);
+        journal.openForAppend(true);
+        journal.startCommitter();
+        return journal;
+    }
+
+    public long getTimeToAdd() {
+        return timeToAdd;
+    }
+
+    public boolean isPatchInPlace() {
+        return patchInPlace;
+    }
+
+    // The dates the batch was started with, which a resumed batch must keep shifting
+    public Set<DateTag> getDateTags() {
+        return dateTags;
+    }
+
+    // What the batch does with photos shifted before, which a resumed batch must keep to
+    public RerunMode getRerunMode() {
+        return rerunMode;
+    }
+
+    public int getPlannedCount() {
+        return plannedDates.size();
+    }
+
+    public synchronized int getDoneCount() {
+        return doneFiles.size();
+    }
+
+    // Planned photos that have not been recorded as done, in plan order
+    public synchronized List<File> getRemainingFiles() {
+        List<File> remaining = new ArrayList<>();
+        for (String file : plannedDates.keySet()) {
+            if (!doneFiles.contains(file)) {
+                remaining.add(new File(file));
+            }
+        }
+        return remaining;
+    }
+
+    // The date planned for a photo in "yyyy:MM:dd HH:mm:ss" form, or null if it is not in the plan
+    public String getPlannedDate(File file) {
+        return plannedDates.get(file.getAbsolutePath());
+    }
+
+    // The time the plan moves a photo by, which differs from timeToAdd for photos re-based from a shift record
+    public long getPlannedShift(File file) {
+        Long shift = plannedShifts.get(file.getAbsolutePath());
+        return shift != null ? shift : timeToAdd;
+    }
+
+    public synchronized void markDone(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        doneFiles.add(key);
+        append("D\t" + escape(key) + "\n");
+    }
+
+    public synchronized void markFailed(File file, String message) throws IOException {
+        append("F\t" + escape(file.getAbsolutePath()) + "\t" + escape(String.valueOf(message)) + "\n");
+    }
+
+    /**
+     * Records that the batch is over and removes the journal. Failed photos
+     * are reported by the batch itself; a rerun starts a fresh plan.
+     */
+    public synchronized void finish() throws IOException {
+        append("END\n");
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (committer != null) {
+            committer.shutdownNow();
+            committer = null;
+        }
+        if (out != null) {
+            commit();
+            out.close();
+            out = null;
+        }
+    }
+
+    private void openForAppend(boolean append) throws IOException {
+        stream = new FileOutputStream(path.toFile(), append);
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    private void startCommitter() {
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(() -> {
+            synchronized (this) {
+                try {
+                    if (uncommittedRecords > 0 && out != null) {
+                        commit();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, GROUP_COMMIT_MILLIS, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void append(String record) throws IOException {
+        out.write(record);
+        uncommittedRecords++;
+        if (uncommittedRecords >= GROUP_COMMIT_RECORDS) {
+            commit();
+        }
+    }
+
+    // Flushes buffered records and syncs them to disk
+    private void commit() throws IOException {
+        out.flush();
+        stream.getFD().sync();
+        uncommittedRecords = 0;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
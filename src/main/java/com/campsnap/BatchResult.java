@@ -0,0 +1,63 @@
+package com.campsnap;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe tally of a batch write. Only the most recent error messages
+ * are kept, so a batch where every photo fails stays small.
+ */
+public class BatchResult {
+    public static final int MAX_ERROR_MESSAGES = 100;
+
+    private final AtomicInteger successCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final Deque<String> errorMessages = new ArrayDeque<>();
+    private volatile boolean cancelled;
+
+    void recordSuccess() {
+        successCount.incrementAndGet();
+    }
+
+    void recordError(File file, Exception e) {
+        errorCount.incrementAndGet();
+        synchronized (errorMessages) {
+            if (errorMessages.size() == MAX_ERROR_MESSAGES) {
+                errorMessages.removeFirst();
+            }
+            errorMessages.addLast(file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    public int getSuccessCount() {
+        return successCount.get();
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    public int getProcessedCount() {
+        return getSuccessCount() + getErrorCount();
+    }
+
+    // The last MAX_ERROR_MESSAGES errors, oldest first
+    public List<String> getErrorMessages() {
+        synchronized (errorMessages) {
+            return new ArrayList<>(errorMessages);
+        }
+    }
+
+    // True if the batch was stopped before every file was processed
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
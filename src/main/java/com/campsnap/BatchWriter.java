@@ -0,0 +1,244 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies an operation to many photos on a fixed pool of worker threads.
+ *
+ * Each worker runs the whole read, rewrite and write chain for one photo, so
+ * several photos are in different stages at any time. Cancelling stops new
+ * photos from being started but lets the ones in progress finish, so no file
+ * is left half written. Of the worker threads, only as many run at once as
+ * the storage keeps up with, judged by how long each photo takes.
+ */
+public class BatchWriter {
+    public interface Operation {
+        // Returns the scanned photo the operation worked from, if it got that far
+        ScannedPhoto apply(File file) throws Exception;
+    }
+
+    public interface Listener {
+        // Called from the worker threads after each file; photo may be null and error is null on success
+        void fileFinished(File file, ScannedPhoto photo, Exception error);
+    }
+
+    private final int threadCount;
+    private final IoConcurrencyLimit writeLimit;
+    private volatile boolean cancelled;
+
+    public BatchWriter(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        // Kept across runs, so later batches in watch mode start from what was learned
+        this.writeLimit = new IoConcurrencyLimit(threadCount);
+    }
+
+    public static int defaultThreadCount() {
+        // Writes are bound by the storage more than by the CPU
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // How many photos are currently written at once
+    public int getWriteConcurrency() {
+        return writeLimit.getLimit();
+    }
+
+    public BatchResult run(Iterable<File> files, Operation operation, Listener listener)
+            throws InterruptedException {
+        BatchResult result = new BatchResult();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(threadCount * 2);
+
+        try {
+            for (File file : files) {
+                if (cancelled) {
+                    result.setCancelled(true);
+                    break;
+                }
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        writeLimit.acquire();
+                        long start = System.nanoTime();
+                        try {
+                            runOne(file, operation, listener, result);
+                        } finally {
+                            writeLimit.release(System.nanoTime() - start);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            // Let files that were already started finish rather than interrupting them
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    private void runOne(File file, Operation operation, Listener listener, BatchResult result) {
+        ScannedPhoto photo = null;
+        Exception error = null;
+        try {
+            photo = operation.apply(file);
+            result.recordSuccess();
+        } catch (Exception e) {
+            error = e;
+            result.recordError(file, e);
+            e.printStackTrace();
+        }
+        if (listener != null) {
+            listener.fileFinished(file, photo, error);
+        }
+    }
+
+    /**
+     * The photo as it was before shift was applied to it, with the record it
+     * had then, so the writer's shiftFor gives back the same shift. A record
+     * whose whole shift is this one was added by that update.
+     */
+    private static ScannedPhoto unshifted(ScannedPhoto photo, long shift) {
+        ShiftRecord shiftRecord = photo.getShiftRecord();
+        ShiftRecord before = shiftRecord == null || shiftRecord.getAppliedShift() == shift ? null
+            : new ShiftRecord(shiftRecord.getOriginalTime(), shiftRecord.getAppliedShift() - shift,
+                shiftRecord.getValueOffset());
+        return new ScannedPhoto(photo.getFile(), photo.getOriginalTime() - shift, photo.getDateOffset(), before);
+    }
+
+    // Shifts the date in each original file
+    public static Operation updateOriginals(MetadataCache cache, PhotoWriter writer, boolean patchInPlace) {
+        return updateOriginals(cache, writer, patchInPlace, null);
+    }
+
+    /**
+     * Shifts the date in each original file, recording progress in journal if
+     * it is not null. A photo that already carries its planned date was
+     * shifted before an interruption and is only marked as done, and one the
+     * writer skips because an earlier run shifted it is not written at all.
+     */
+    public static Operation updateOriginals(MetadataCache cache, PhotoWriter writer, boolean patchInPlace,
+            BatchJournal journal) {
+        return file -> {
+            try {
+                // Check if file exists and is writable
+                if (!file.exists()) {
+                    throw new IOException("File does not exist: " + file.getName());
+                }
+                if (!file.canWrite()) {
+                    throw new IOException("Cannot write to file: " + file.getName());
+                }
+
+                // Get the original date and calculate new date
+                ScannedPhoto photo = cache.get(file);
+                if (photo.isError()) {
+                    throw new IOException("Could not read EXIF metadata");
+                }
+                if (!photo.hasOriginalDate()) {
+                    throw new IOException("No original date found in metadata");
+                }
+
+                if (journal != null && journal.getPlannedShift(file) != 0
+                        && PhotoWriter.formatExifDate(photo.getOriginalTime()).equals(journal.getPlannedDate(file))) {
+                    // Report the photo as it was before the interrupted run shifted it
+                    journal.markDone(file);
+                    return unshifted(photo, journal.getPlannedShift(file));
+                }
+                if (writer.skips(photo)) {
+                    if (journal != null) {
+                        journal.markDone(file);
+                    }
+                    return photo;
+                }
+
+                writer.updateOriginal(photo, patchInPlace);
+                cache.refresh(file);
+                if (journal != null) {
+                    journal.markDone(file);
+                }
+                return photo;
+            } catch (Exception e) {
+                if (journal != null) {
+                    journal.markFailed(file, e.getMessage());
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Writes a copy of each file with the shifted date into destinationDir,
+     * copying skipped photos unchanged. Photos of the same name from
+     * different folders get numbered names rather than overwriting each other.
+     */
+    public static Operation copyToFolder(MetadataCache cache, PhotoWriter writer, File destinationDir) {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        return sourceFile -> {
+            File destFile = new File(destinationDir, PhotoFiles.uniqueName(names, sourceFile.getName()));
+
+            // Check if source file exists and is readable
+            if (!sourceFile.exists()) {
+                throw new IOException("Source file does not exist: " + sourceFile.getName());
+            }
+            if (!sourceFile.canRead()) {
+                throw new IOException("Cannot read source file: " + sourceFile.getName());
+            }
+
+            // Get the original date and calculate new date
+            ScannedPhoto photo = cache.get(sourceFile);
+            if (photo.isError()) {
+                throw new IOException("Could not read EXIF metadata");
+            }
+
+            if (photo.hasOriginalDate() && !writer.skips(photo)) {
+                writer.copyTo(photo, destFile);
+            } else {
+                // Photos without a date, or shifted before, are copied as they are
+                writer.copyUnchanged(sourceFile, destFile);
+            }
+            cache.refresh(destFile);
+            return photo;
+        };
+    }
+
+    // Adds a copy of each file with the shifted date to archive, adding skipped photos unchanged
+    public static Operation copyToArchive(MetadataCache cache, PhotoWriter writer, ArchiveWriter archive) {
+        return sourceFile -> {
+            if (!sourceFile.canRead()) {
+                throw new IOException("Cannot read source file: " + sourceFile.getName());
+            }
+
+            ScannedPhoto photo = cache.get(sourceFile);
+            if (photo.isError()) {
+                throw new IOException("Could not read EXIF metadata");
+            }
+
+            if (photo.hasOriginalDate() && !writer.skips(photo)) {
+                writer.copyTo(photo, archive, sourceFile.getName());
+            } else {
+                writer.copyUnchanged(sourceFile, archive, sourceFile.getName());
+            }
+            return photo;
+        };
+    }
+}
@@ -0,0 +1,582 @@
+package com.campsnap;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Headless front end for shifting photo dates from scripts and servers.
+ *
+ * Uses the same scanner and batch writer as the window, but never touches
+ * AWT. Inputs are walked lazily and results are streamed to the report, so
+ * memory use does not grow with the number of photos.
+ */
+public class CommandLine {
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    // Keeps the scan cache useful between the automatic and write passes without growing unbounded
+    private static final int CACHE_LIMIT = 50_000;
+
+    // A photo is taken as fully copied once it has not changed for this long
+    private static final long WATCH_SETTLE_MILLIS = 2_000;
+    private static final int WATCH_BATCH_SIZE = 500;
+    private static final long SHUTDOWN_WAIT_MILLIS = 30_000;
+
+    private final List<String> inputs = new ArrayList<>();
+    private boolean recursive;
+    private Long days;
+    private File outputDir;
+    private boolean inPlace;
+    private File archiveFile;
+    private boolean patchInPlace = true;
+    private Set<DateTag> dateTags = DateTag.ORIGINAL_ONLY;
+    private RerunMode rerunMode = RerunMode.IGNORE;
+    private int threadCount = BatchWriter.defaultThreadCount();
+    private boolean dryRun;
+    private boolean verify;
+    private File reportFile;
+    private ResultReport.Format format;
+    private boolean useIndex = true;
+    private File journalFile;
+    private File statsFile;
+    private boolean watch;
+    private boolean help;
+
+    private final MetadataCache metadataCache = new MetadataCache(CACHE_LIMIT);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    // Photos left alone because an earlier run shifted them
+    private final AtomicInteger skippedCount = new AtomicInteger();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new CommandLine().run(args));
+    }
+
+    int run(String[] args) {
+        try {
+            parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println();
+            printUsage();
+            return 2;
+        }
+        if (help) {
+            printUsage();
+            return 0;
+        }
+
+        MetadataIndex index = null;
+        BatchJournal journal = null;
+        try {
+            if (useIndex) {
+                index = MetadataIndex.open(MetadataIndex.defaultPath(), metadataCache);
+            }
+            if (watch) {
+                try (ResultReport report = openReport()) {
+                    return watch(report, days * DAY_MILLIS);
+                }
+            }
+            if (journalFile != null && !dryRun) {
+                journal = BatchJournal.resume(journalFile.toPath());
+            }
+            long timeToAdd;
+            if (journal != null) {
+                // An unfinished batch is completed with the shift it was planned with
+                System.err.printf("Resuming an interrupted update of %d photos, %d already finished%n",
+                    journal.getPlannedCount(), journal.getDoneCount());
+                timeToAdd = journal.getTimeToAdd();
+            } else {
+                timeToAdd = days != null ? days * DAY_MILLIS : automaticTimeToAdd();
+            }
+            try (ResultReport report = openReport()) {
+                return dryRun ? dryRun(report, timeToAdd) : write(report, timeToAdd, journal);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            closeJournal(journal);
+            closeIndex(index);
+            finished.countDown();
+        }
+    }
+
+    private static void closeIndex(MetadataIndex index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not save the metadata index: " + e.getMessage());
+        }
+    }
+
+    private static void closeJournal(BatchJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not save the update journal: " + e.getMessage());
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    help = true;
+                    return;
+                case "-r":
+                case "--recursive":
+                    recursive = true;
+                    break;
+                case "--auto":
+                    days = null;
+                    break;
+                case "--days":
+                    days = parseNumber(arg, value(args, ++i, arg));
+                    break;
+                case "--in-place":
+                    inPlace = true;
+                    break;
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "--archive":
+                    archiveFile = new File(value(args, ++i, arg));
+                    ArchiveWriter.Format.forName(archiveFile.getName());
+                    break;
+                case "--no-patch":
+                    patchInPlace = false;
+                    break;
+                case "--dates":
+                    dateTags = DateTag.parse(value(args, ++i, arg));
+                    break;
+                case "--shifted":
+                    rerunMode = RerunMode.parse(value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    threadCount = (int) parseNumber(arg, value(args, ++i, arg));
+                    if (threadCount < 1) {
+                        throw new IllegalArgumentException("--threads must be at least 1");
+                    }
+                    break;
+                case "--no-index":
+                    useIndex = false;
+                    break;
+                case "--journal":
+                    journalFile = new File(value(args, ++i, arg));
+                    break;
+                case "--stats":
+                    statsFile = new File(value(args, ++i, arg));
+                    break;
+                case "--verify":
+                    verify = true;
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--dry-run":
+                    dryRun = true;
+                    break;
+                case "--report":
+                    reportFile = new File(value(args, ++i, arg));
+                    break;
+                case "--format":
+                    String name = value(args, ++i, arg);
+                    if (!name.equalsIgnoreCase("csv") && !name.equalsIgnoreCase("json")
+                            && !name.equalsIgnoreCase("jsonl")) {
+                        throw new IllegalArgumentException("--format must be csv, json or jsonl");
+                    }
+                    format = ResultReport.formatFor(name);
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No input files or directories given");
+        }
+        int destinations = (inPlace ? 1 : 0) + (outputDir != null ? 1 : 0) + (archiveFile != null ? 1 : 0);
+        if (destinations > 1) {
+            throw new IllegalArgumentException("Choose only one of --in-place, --output and --archive");
+        }
+        if (destinations == 0 && !dryRun) {
+            throw new IllegalArgumentException("Choose --in-place, --output DIR, --archive FILE or --dry-run");
+        }
+        if (archiveFile != null && (verify || watch)) {
+            throw new IllegalArgumentException("--archive can't be combined with --verify or --watch");
+        }
+        if (journalFile != null && !inPlace) {
+            throw new IllegalArgumentException("--journal can only be used with --in-place");
+        }
+        if (watch && days == null) {
+            throw new IllegalArgumentException("--watch needs a fixed shift; add --days N");
+        }
+        if (watch && (dryRun || journalFile != null)) {
+            throw new IllegalArgumentException("--watch can't be combined with --dry-run or --journal");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static long parseNumber(String option, String value) {
+        try {
+            long number = Long.parseLong(value);
+            if (number < 0) {
+                throw new IllegalArgumentException(option + " must not be negative");
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a whole number: " + value);
+        }
+    }
+
+    private ResultReport openReport() throws IOException {
+        ResultReport.Format reportFormat = format;
+        if (reportFormat == null) {
+            reportFormat = reportFile != null ? ResultReport.formatFor(reportFile.getName()) : ResultReport.Format.CSV;
+        }
+        PrintWriter out = reportFile != null
+            ? new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportFile), StandardCharsets.UTF_8)))
+            : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        return new ResultReport(out, reportFormat);
+    }
+
+    /**
+     * Shifts the most recent photo to now, as the window's automatic mode
+     * does. Photos shifted before count with the date they had before.
+     */
+    private long automaticTimeToAdd() throws InterruptedException {
+        AtomicLong mostRecentTime = new AtomicLong(ScannedPhoto.NO_DATE);
+        try (Stream<File> files = PhotoFiles.find(inputs, recursive)) {
+            new PhotoScanner(metadataCache, threadCount).scan(files::iterator, photo -> {
+                if (photo.hasOriginalDate()) {
+                    long time = rerunMode.usesRecords() ? photo.getUnshiftedTime() : photo.getOriginalTime();
+                    mostRecentTime.accumulateAndGet(time, Math::max);
+                }
+            });
+        }
+
+        if (mostRecentTime.get() == ScannedPhoto.NO_DATE) {
+            System.err.println("No valid dates found in photos; nothing will be shifted");
+            return 0;
+        }
+        long timeToAdd = System.currentTimeMillis() - mostRecentTime.get();
+        System.err.printf("Automatic adjustment: %d days%n", timeToAdd / DAY_MILLIS);
+        return timeToAdd;
+    }
+
+    private int dryRun(ResultReport report, long timeToAdd) throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger errorCount = new AtomicInteger();
+        long startTime = System.nanoTime();
+        PhotoScanner scanner = new PhotoScanner(metadataCache, threadCount);
+        PhotoWriter planner = new PhotoWriter(timeToAdd, StageTimings.NONE, null, dateTags, rerunMode);
+
+        try (Stream<File> files = PhotoFiles.find(inputs, recursive)) {
+            scanner.scan(files::iterator, photo -> {
+                count.incrementAndGet();
+                if (photo.isError()) {
+                    errorCount.incrementAndGet();
+                    report.record(photo.getFile(), "error", ScannedPhoto.NO_DATE, ScannedPhoto.NO_DATE,
+                        "Could not read EXIF metadata");
+                } else if (planner.skips(photo)) {
+                    report.record(photo.getFile(), "skipped", photo.getOriginalTime(), photo.getOriginalTime(),
+                        alreadyShifted(photo));
+                } else if (photo.hasOriginalDate()) {
+                    report.record(photo.getFile(), "planned", photo.getOriginalTime(),
+                        photo.getOriginalTime() + planner.shiftFor(photo), null);
+                } else {
+                    report.record(photo.getFile(), "skipped", ScannedPhoto.NO_DATE, ScannedPhoto.NO_DATE,
+                        "No original date found in metadata");
+                }
+            });
+        }
+
+        printSummary("Checked", count.get(), errorCount.get(), startTime);
+        writeStats(scanner.getTimings(), "scan");
+        return errorCount.get() > 0 ? 1 : 0;
+    }
+
+    /**
+     * Writes every photo, or only the unfinished ones when resuming a
+     * journal. A new journal is started first when one was asked for.
+     */
+    private int write(ResultReport report, long timeToAdd, BatchJournal resumed)
+            throws IOException, InterruptedException {
+        StageTimings timings = new StageTimings();
+        PhotoVerifier verifier = verifierFor(report, timings);
+        PhotoWriter writer = resumed != null
+            ? new PhotoWriter(timeToAdd, timings, verifier, resumed.getDateTags(), resumed.getRerunMode())
+            : new PhotoWriter(timeToAdd, timings, verifier, dateTags, rerunMode);
+        BatchJournal journal = resumed;
+        ArchiveWriter archive = null;
+        BatchWriter.Operation operation;
+        if (inPlace) {
+            if (journal == null && journalFile != null) {
+                try (Stream<File> files = PhotoFiles.find(inputs, recursive)) {
+                    Iterable<ScannedPhoto> photos = files.map(metadataCache::get)::iterator;
+                    journal = BatchJournal.create(journalFile.toPath(), photos, writer, patchInPlace);
+                }
+            }
+            boolean patch = resumed != null ? resumed.isPatchInPlace() : patchInPlace;
+            operation = BatchWriter.updateOriginals(metadataCache, writer, patch, journal);
+        } else if (archiveFile != null) {
+            // A couple of entries per thread keeps the archive busy without holding many headers in memory
+            archive = new ArchiveWriter(archiveFile, ArchiveWriter.Format.forName(archiveFile.getName()),
+                threadCount * 2, timings);
+            operation = BatchWriter.copyToArchive(metadataCache, writer, archive);
+        } else {
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                System.err.println("Error: Could not create destination directory: " + outputDir.getAbsolutePath());
+                return 1;
+            }
+            operation = BatchWriter.copyToFolder(metadataCache, writer, outputDir);
+        }
+        long startTime = System.nanoTime();
+
+        BatchResult result;
+        try (Stream<File> files = resumed != null
+                ? resumed.getRemainingFiles().stream()
+                : PhotoFiles.find(inputs, recursive)) {
+            result = new BatchWriter(threadCount).run(files::iterator, operation, recordTo(report, writer));
+        }
+        if (verifier != null) {
+            verifier.finish();
+        }
+        boolean archived = true;
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Error: Could not write archive " + archiveFile.getPath() + ": " + e.getMessage());
+                archived = false;
+            }
+        }
+
+        writer.getTimings().finish();
+        if (journal != null) {
+            journal.finish();
+        }
+
+        int skipped = skippedCount.get();
+        printSummary(inPlace ? "Updated" : "Copied", result.getSuccessCount() - skipped, result.getErrorCount(),
+            startTime);
+        if (skipped > 0) {
+            System.err.printf("%s %d photos shifted before%n", inPlace ? "Skipped" : "Copied unchanged", skipped);
+        }
+        printVerification(verifier);
+        System.err.print(writer.getTimings().summary());
+        writeStats(writer.getTimings(), inPlace ? "update" : archive != null ? "archive" : "copy");
+        return result.getErrorCount() > 0 || hasMismatches(verifier) || !archived ? 1 : 0;
+    }
+
+    /**
+     * Shifts photos as they are added to the input folders until the process
+     * is stopped with Ctrl+C. Photos already in the folders are left alone.
+     */
+    private int watch(ResultReport report, long timeToAdd) throws IOException, InterruptedException {
+        List<Path> roots = new ArrayList<>();
+        for (String input : inputs) {
+            Path root = Paths.get(input).toAbsolutePath().normalize();
+            if (!Files.isDirectory(root)) {
+                System.err.println("Error: --watch needs folders to watch: " + input);
+                return 2;
+            }
+            if (outputDir != null && outputDir.toPath().toAbsolutePath().normalize().startsWith(root)) {
+                // Copies would land in the watched folder and be shifted again
+                System.err.println("Error: The output folder must not be inside a watched folder");
+                return 2;
+            }
+            roots.add(root);
+        }
+
+        StageTimings timings = new StageTimings();
+        PhotoVerifier verifier = verifierFor(report, timings);
+        PhotoWriter writer = new PhotoWriter(timeToAdd, timings, verifier, dateTags, rerunMode);
+        BatchWriter.Operation operation;
+        if (inPlace) {
+            operation = BatchWriter.updateOriginals(metadataCache, writer, patchInPlace);
+        } else {
+            if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+                System.err.println("Error: Could not create destination directory: " + outputDir.getAbsolutePath());
+                return 1;
+            }
+            operation = BatchWriter.copyToFolder(metadataCache, writer, outputDir);
+        }
+        BatchWriter batchWriter = new BatchWriter(threadCount);
+        AtomicInteger errorCount = new AtomicInteger();
+
+        try (FolderWatcher watcher = new FolderWatcher(roots, recursive, WATCH_SETTLE_MILLIS, WATCH_BATCH_SIZE)) {
+            // On Ctrl+C, stop watching and let the current batch and the report finish
+            Thread stopWatching = new Thread(() -> {
+                try {
+                    watcher.stop();
+                    finished.await(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (IOException | InterruptedException e) {
+                    // Exiting anyway
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(stopWatching);
+
+            System.err.printf("Watching %d folder(s) for new photos, shifting by %d days. Press Ctrl+C to stop.%n",
+                roots.size(), timeToAdd / DAY_MILLIS);
+            watcher.run(batch -> {
+                long startTime = System.nanoTime();
+                BatchResult result = batchWriter.run(batch, operation, recordTo(report, writer));
+                report.flush();
+                MetadataIndex index = metadataCache.getIndex();
+                if (index != null) {
+                    index.flush();
+                }
+                errorCount.addAndGet(result.getErrorCount());
+                printSummary(inPlace ? "Updated" : "Copied", result.getSuccessCount(), result.getErrorCount(),
+                    startTime);
+            });
+        }
+
+        if (verifier != null) {
+            verifier.finish();
+        }
+        writer.getTimings().finish();
+        printVerification(verifier);
+        writeStats(writer.getTimings(), "watch");
+        return errorCount.get() > 0 || hasMismatches(verifier) ? 1 : 0;
+    }
+
+    // With --verify, reads back each written photo and adds a "mismatch" record for any that differ
+    private PhotoVerifier verifierFor(ResultReport report, StageTimings timings) {
+        if (!verify) {
+            return null;
+        }
+        return new PhotoVerifier(PhotoVerifier.defaultThreadCount(), timings, (file, problem) -> {
+            if (problem != null) {
+                report.record(file, "mismatch", ScannedPhoto.NO_DATE, ScannedPhoto.NO_DATE, problem);
+            }
+        });
+    }
+
+    private static void printVerification(PhotoVerifier verifier) {
+        if (verifier != null) {
+            System.err.printf("Verified %d photos, %d mismatches%n",
+                verifier.getVerifiedCount(), verifier.getMismatchCount());
+        }
+    }
+
+    private static boolean hasMismatches(PhotoVerifier verifier) {
+        return verifier != null && verifier.getMismatchCount() > 0;
+    }
+
+    /**
+     * Reports each finished photo with the date it had and the date it was
+     * given. Originals shifted before are reported as skipped; copies of them
+     * as copied, with the reason they were left unchanged.
+     */
+    private BatchWriter.Listener recordTo(ResultReport report, PhotoWriter writer) {
+        String doneStatus = inPlace ? "updated" : "copied";
+        return (file, photo, error) -> {
+            writer.getTimings().fileFinished();
+            long originalTime = photo != null ? photo.getOriginalTime() : ScannedPhoto.NO_DATE;
+            long newTime = originalTime != ScannedPhoto.NO_DATE
+                ? originalTime + writer.shiftFor(photo)
+                : ScannedPhoto.NO_DATE;
+            if (error != null) {
+                report.record(file, "error", originalTime, newTime, error.getMessage());
+            } else if (writer.skips(photo)) {
+                skippedCount.incrementAndGet();
+                report.record(file, inPlace ? "skipped" : doneStatus, originalTime, newTime, alreadyShifted(photo));
+            } else {
+                report.record(file, doneStatus, originalTime, newTime, null);
+            }
+        };
+    }
+
+    private static String alreadyShifted(ScannedPhoto photo) {
+        return String.format("Already shifted by %d days", photo.getShiftRecord().getAppliedShift() / DAY_MILLIS);
+    }
+
+    private void writeStats(StageTimings timings, String run) {
+        if (statsFile == null) {
+            return;
+        }
+        try {
+            Files.write(statsFile.toPath(), timings.toJson(run).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write stage timings: " + e.getMessage());
+        }
+    }
+
+    private static void printSummary(String action, int count, int errorCount, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        System.err.printf("%s %d photos, %d errors in %.1f s (%.1f files/sec)%n",
+            action, count, errorCount, seconds, seconds > 0 ? count / seconds : 0);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java -jar camp-snap-time-taken-updater.jar [options] <file|directory|glob>...");
+        System.err.println();
+        System.err.println("Shifts the EXIF \"Date Taken\" of JPEG photos. Without any arguments the window opens.");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println("  -r, --recursive    Include photos in subdirectories");
+        System.err.println("  --auto             Shift so the most recent photo is dated now (default)");
+        System.err.println("  --days N           Shift every photo forward by N days");
+        System.err.println("  --in-place         Modify the original photos");
+        System.err.println("  --output DIR       Write shifted copies into DIR");
+        System.err.println("  --archive FILE     Write shifted copies into one .zip or .tar FILE");
+        System.err.println("  --no-patch         Always rewrite the metadata instead of patching dates in place");
+        System.err.println("  --dates LIST       Dates to shift besides the date taken, from modified, digitized");
+        System.err.println("                     and gps (default: only the date taken)");
+        System.err.println("  --shifted MODE     What to do with photos this tool shifted before: ignore the");
+        System.err.println("                     record and shift them again (default), skip them, or rebase");
+        System.err.println("                     them on the date they had before. Skip and rebase record the");
+        System.err.println("                     shift in every photo, which rewrites a photo on its first update");
+        System.err.println("  --threads N        Number of photos processed at the same time");
+        System.err.println("  --no-index         Don't read or update the saved metadata index");
+        System.err.println("  --journal FILE     Record progress of --in-place in FILE, resuming it if unfinished");
+        System.err.println("  --verify           Read back each written photo and check its date and image data");
+        System.err.println("  --dry-run          Show the planned dates without writing anything");
+        System.err.println("  --watch            Keep running and shift photos as they are added to the folders");
+        System.err.println("  --report FILE      Write per-photo results to FILE instead of standard output");
+        System.err.println("  --format csv|json|jsonl");
+        System.err.println("                     Result format (default: from the report file name, else csv)");
+        System.err.println("  --stats FILE       Write per-stage timings of the run to FILE as JSON");
+        System.err.println("  -h, --help         Show this help");
+    }
+}
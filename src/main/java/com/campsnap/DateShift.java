@@ -0,0 +1,78 @@
+package com.campsnap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+
+/**
+ * Shifts the dates an update rewrites besides the date taken, shared by the
+ * in-place patch and the metadata rewrite so both produce the same values.
+ *
+ * EXIF dates are local time and shifted like the date taken. The GPS date
+ * and time stamps are UTC and shifted as one instant, so the date rolls over
+ * with the time.
+ */
+final class DateShift {
+    private static final DateTimeFormatter GPS_DATE_FORMAT =
+        DateTimeFormatter.ofPattern("uuuu:MM:dd").withResolverStyle(ResolverStyle.STRICT).withZone(ZoneOffset.UTC);
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long MAX_RATIONAL_PART = 0xFFFFFFFFL;
+
+    private DateShift() {
+    }
+
+    // Shifts a "yyyy:MM:dd HH:mm:ss" date, or returns null if value is not one
+    static String shiftDate(String value, long timeToAdd) {
+        if (value == null || value.length() < 19) {
+            return null;
+        }
+        long time = ExifDateReader.parseDate(ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)), 0);
+        return time == ScannedPhoto.NO_DATE ? null : PhotoWriter.formatExifDate(time + timeToAdd);
+    }
+
+    /**
+     * Shifts a GPS date stamp together with the hours, minutes and seconds of
+     * its time stamp. The numerators are replaced in place and the
+     * denominators kept. Returns the new date stamp, or null without changing
+     * anything if the stamps are not a valid date and time.
+     */
+    static String shiftGps(String dateStamp, long[] numerators, long[] denominators, long timeToAdd) {
+        if (dateStamp == null || numerators.length != 3 || denominators.length != 3) {
+            return null;
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.parse(dateStamp.trim(), GPS_DATE_FORMAT);
+        } catch (DateTimeException e) {
+            return null;
+        }
+        double seconds = 0;
+        for (int i = 0; i < 3; i++) {
+            if (denominators[i] == 0) {
+                return null;
+            }
+            seconds = seconds * 60 + (double) numerators[i] / denominators[i];
+        }
+
+        long time = date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+            + Math.round(seconds * 1000) + timeToAdd;
+        long timeOfDay = Math.floorMod(time, DAY_MILLIS);
+        long[] shifted = {
+            timeOfDay / 3_600_000 * denominators[0],
+            timeOfDay / 60_000 % 60 * denominators[1],
+            Math.round(timeOfDay % 60_000 / 1000.0 * denominators[2])
+        };
+        for (long numerator : shifted) {
+            if (numerator > MAX_RATIONAL_PART) {
+                return null;
+            }
+        }
+        System.arraycopy(shifted, 0, numerators, 0, 3);
+        return GPS_DATE_FORMAT.format(Instant.ofEpochMilli(time - timeOfDay));
+    }
+}
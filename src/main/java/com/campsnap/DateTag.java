@@ -0,0 +1,77 @@
+package com.campsnap;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The EXIF dates an update can shift. The date taken is always shifted; the
+ * others are shifted by the same amount when a photo has them, each from its
+ * own value, so any difference between them is kept.
+ *
+ * The time zone offsets (OffsetTime and friends) are left alone, since a
+ * shift moves the time of day within the same zone.
+ */
+public enum DateTag {
+    ORIGINAL("original", "Date taken"),
+    // DateTime in IFD0, which cameras set to the capture time and editors to the last change
+    MODIFIED("modified", "Date modified"),
+    DIGITIZED("digitized", "Date digitized"),
+    // GPSDateStamp and GPSTimeStamp, in UTC
+    GPS("gps", "GPS date and time");
+
+    public static final Set<DateTag> ALL = Collections.unmodifiableSet(EnumSet.allOf(DateTag.class));
+    public static final Set<DateTag> ORIGINAL_ONLY = Collections.unmodifiableSet(EnumSet.of(ORIGINAL));
+
+    private final String key;
+    private final String label;
+
+    DateTag(String key, String label) {
+        this.key = key;
+        this.label = label;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Parses a comma-separated list of keys such as "modified,gps". The date
+     * taken is included whether it is listed or not.
+     */
+    public static Set<DateTag> parse(String list) {
+        Set<DateTag> tags = EnumSet.of(ORIGINAL);
+        for (String key : list.split(",")) {
+            String trimmed = key.trim().toLowerCase(Locale.ROOT);
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            DateTag tag = forKey(trimmed);
+            if (tag == null) {
+                throw new IllegalArgumentException("Unknown date: " + key.trim());
+            }
+            tags.add(tag);
+        }
+        return Collections.unmodifiableSet(tags);
+    }
+
+    // The keys of tags, comma-separated, as parse() reads them
+    public static String format(Set<DateTag> tags) {
+        return tags.stream().map(DateTag::getKey).collect(Collectors.joining(","));
+    }
+
+    private static DateTag forKey(String key) {
+        for (DateTag tag : values()) {
+            if (tag.key.equals(key)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,198 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Overwrites the DateTimeOriginal value of a photo in place.
+ *
+ * EXIF dates are fixed-width ASCII ("yyyy:MM:dd HH:mm:ss" plus a NUL), so a
+ * shifted date fits exactly where the old one was and nothing else in the file
+ * has to move. The other dates an update shifts are fixed-width too, so they
+ * are patched the same way, with one write covering all of them, and so is
+ * the ShiftRecord of a photo that already has one.
+ */
+public final class ExifDatePatcher {
+    private static final int DATE_LENGTH = 19;
+
+    private ExifDatePatcher() {
+    }
+
+    /**
+     * Replaces the date stored at valueOffset with newValue and syncs the file.
+     *
+     * Returns false without writing anything if the file does not hold
+     * expectedValue followed by a NUL at that offset, in which case the caller
+     * should fall back to rewriting the metadata.
+     */
+    public static boolean patch(File file, long valueOffset, String expectedValue, String newValue)
+            throws IOException {
+        if (valueOffset < 0 || expectedValue.length() != DATE_LENGTH || newValue.length() != DATE_LENGTH) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Make sure the offset still points at the date we scanned
+            ByteBuffer current = ByteBuffer.allocate(DATE_LENGTH + 1);
+            while (current.hasRemaining()) {
+                if (channel.read(current, valueOffset + current.position()) < 0) {
+                    return false;
+                }
+            }
+            byte[] expected = expectedValue.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < DATE_LENGTH; i++) {
+                if (current.get(i) != expected[i]) {
+                    return false;
+                }
+            }
+            if (current.get(DATE_LENGTH) != 0) {
+                return false;
+            }
+
+            ByteBuffer replacement = ByteBuffer.wrap(newValue.getBytes(StandardCharsets.US_ASCII));
+            while (replacement.hasRemaining()) {
+                channel.write(replacement, valueOffset + replacement.position());
+            }
+            channel.force(true);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the date taken as patch() does and shifts every other date in
+     * tags that the photo has by timeToAdd, writing all of them with a single
+     * positioned write that spans the values, then syncs the file.
+     *
+     * Returns the position the write started at, or -1 without writing
+     * anything if the header no longer matches the scan or a date could not
+     * be located, in which case the caller should rewrite the metadata.
+     */
+    public static long patch(File file, long valueOffset, String expectedValue, String newValue,
+            long timeToAdd, Set<DateTag> tags) throws IOException {
+        return patch(file, valueOffset, expectedValue, newValue, timeToAdd, tags, null);
+    }
+
+    /**
+     * As patch(File, long, String, String, long, Set), also replacing the
+     * ShiftRecord stored at the value offset of shiftRecord with it, when
+     * shiftRecord is not null. Returns -1 if the photo holds no record there.
+     */
+    public static long patch(File file, long valueOffset, String expectedValue, String newValue,
+            long timeToAdd, Set<DateTag> tags, ShiftRecord shiftRecord) throws IOException {
+        if (tags.equals(DateTag.ORIGINAL_ONLY) && shiftRecord == null) {
+            return patch(file, valueOffset, expectedValue, newValue) ? valueOffset : -1;
+        }
+        if (valueOffset < 0 || expectedValue.length() != DATE_LENGTH || newValue.length() != DATE_LENGTH) {
+            return -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ExifDateReader.readPrefix(channel);
+            int original = (int) valueOffset;
+            // Make sure the offset still points at the date we scanned
+            if (valueOffset + DATE_LENGTH + 1 > header.limit()
+                    || !expectedValue.equals(ascii(header, original, DATE_LENGTH))
+                    || header.get(original + DATE_LENGTH) != 0) {
+                return -1;
+            }
+
+            // New bytes by position in the file
+            TreeMap<Integer, byte[]> changes = new TreeMap<>();
+            changes.put(original, newValue.getBytes(StandardCharsets.US_ASCII));
+            if (shiftRecord != null) {
+                if (!isRecord(header, shiftRecord.getValueOffset())) {
+                    return -1;
+                }
+                changes.put((int) shiftRecord.getValueOffset(),
+                    shiftRecord.format().getBytes(StandardCharsets.US_ASCII));
+            }
+            if (!tags.equals(DateTag.ORIGINAL_ONLY)) {
+                ExifDateReader.DateFields fields = ExifDateReader.findDateFields(header);
+                if (fields == null) {
+                    return -1;
+                }
+                if (tags.contains(DateTag.MODIFIED)) {
+                    shiftDate(header, fields.modified, timeToAdd, changes);
+                }
+                if (tags.contains(DateTag.DIGITIZED)) {
+                    shiftDate(header, fields.digitized, timeToAdd, changes);
+                }
+                if (tags.contains(DateTag.GPS)) {
+                    shiftGps(header, fields, timeToAdd, changes);
+                }
+            }
+
+            // Unchanged bytes between the values are written back as they are
+            int start = changes.firstKey();
+            int end = changes.lastKey() + changes.lastEntry().getValue().length;
+            ByteBuffer patch = ByteBuffer.allocate(end - start);
+            patch.put(header.duplicate().position(start).limit(end));
+            for (Map.Entry<Integer, byte[]> change : changes.entrySet()) {
+                patch.put(change.getKey() - start, change.getValue());
+            }
+            patch.flip();
+            while (patch.hasRemaining()) {
+                channel.write(patch, start + patch.position());
+            }
+            channel.force(true);
+            return start;
+        }
+    }
+
+    // Whether a ShiftRecord value and its NUL lie at offset within the header
+    private static boolean isRecord(ByteBuffer header, long offset) {
+        if (offset < 0 || offset + ShiftRecord.LENGTH + 1 > header.limit()) {
+            return false;
+        }
+        int start = (int) offset;
+        return ShiftRecord.parse(ascii(header, start, ShiftRecord.LENGTH), offset) != null
+            && header.get(start + ShiftRecord.LENGTH) == 0;
+    }
+
+    private static void shiftDate(ByteBuffer header, int offset, long timeToAdd, Map<Integer, byte[]> changes) {
+        if (offset < 0) {
+            return;
+        }
+        String shifted = DateShift.shiftDate(ascii(header, offset, DATE_LENGTH), timeToAdd);
+        if (shifted != null) {
+            changes.put(offset, shifted.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static void shiftGps(ByteBuffer header, ExifDateReader.DateFields fields, long timeToAdd,
+            Map<Integer, byte[]> changes) {
+        if (fields.gpsDate < 0 || fields.gpsTime < 0) {
+            return;
+        }
+        ByteBuffer rationals = header.duplicate().order(fields.order);
+        long[] numerators = new long[3];
+        long[] denominators = new long[3];
+        for (int i = 0; i < 3; i++) {
+            numerators[i] = rationals.getInt(fields.gpsTime + i * 8) & 0xFFFFFFFFL;
+            denominators[i] = rationals.getInt(fields.gpsTime + i * 8 + 4) & 0xFFFFFFFFL;
+        }
+        String dateStamp = DateShift.shiftGps(ascii(header, fields.gpsDate, 10), numerators, denominators, timeToAdd);
+        if (dateStamp == null) {
+            return;
+        }
+        changes.put(fields.gpsDate, dateStamp.getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer time = ByteBuffer.allocate(24).order(fields.order);
+        for (int i = 0; i < 3; i++) {
+            time.putInt((int) numerators[i]).putInt((int) denominators[i]);
+        }
+        changes.put(fields.gpsTime, time.array());
+    }
+
+    private static String ascii(ByteBuffer header, int offset, int length) {
+        byte[] bytes = new byte[length];
+        header.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
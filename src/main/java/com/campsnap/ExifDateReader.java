@@ -0,0 +1,483 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Reads DateTimeOriginal straight from the JPEG header without building the
+ * full metadata tree.
+ *
+ * Only a bounded prefix of the file is read. The reader walks the JPEG markers
+ * to the EXIF APP1 segment and follows IFD0 to the Exif sub-IFD, where it
+ * also picks up the ShiftRecord of an earlier update. Anything it does not
+ * fully understand makes it return null, so callers can fall back to
+ * metadata-extractor.
+ */
+public final class ExifDateReader {
+    // EXIF lives in APP1, which is at most 64 KB and normally right after SOI
+    static final int PREFIX_SIZE = 64 * 1024;
+
+    private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    private static final int TAG_GPS_IFD_POINTER = 0x8825;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TAG_GPS_TIME_STAMP = 0x0007;
+    private static final int TAG_GPS_DATE_STAMP = 0x001D;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+    private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_RATIONAL = 5;
+    private static final int DATE_LENGTH = 19;
+    private static final int GPS_DATE_LENGTH = 10;
+    // Returned for a value that lies beyond the part of the header that was read
+    private static final int OUTSIDE = -2;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocate(PREFIX_SIZE));
+
+    private ExifDateReader() {
+    }
+
+    /**
+     * The original date of a photo and where its value is stored in the file.
+     */
+    public static class ExifDate {
+        static final ExifDate NONE = new ExifDate(ScannedPhoto.NO_DATE, -1, 0, null);
+
+        private final long originalTime;
+        private final long valueOffset;
+        private final int valueLength;
+        private final ShiftRecord shiftRecord;
+
+        ExifDate(long originalTime, long valueOffset, int valueLength, ShiftRecord shiftRecord) {
+            this.originalTime = originalTime;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.shiftRecord = shiftRecord;
+        }
+
+        // Epoch milliseconds, or ScannedPhoto.NO_DATE when the photo has no original date
+        public long getOriginalTime() {
+            return originalTime;
+        }
+
+        // Absolute file offset of the ASCII value, or -1 when the photo has no original date
+        public long getValueOffset() {
+            return valueOffset;
+        }
+
+        // Declared ASCII count of the value, including the trailing NUL
+        public int getValueLength() {
+            return valueLength;
+        }
+
+        // The record of an earlier update, or null if the photo has none
+        public ShiftRecord getShiftRecord() {
+            return shiftRecord;
+        }
+    }
+
+    /**
+     * Where the EXIF APP1 segment sits in a file.
+     */
+    static class ExifSegment {
+        static final ExifSegment MISSING = new ExifSegment(-1, -1);
+
+        // Position of the APP1 marker
+        final int start;
+        // Position just past the segment, which may lie beyond the prefix that was read
+        final int end;
+
+        ExifSegment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        // Position of the TIFF header, after the marker, length and "Exif\0\0"
+        int tiffStart() {
+            return start + 10;
+        }
+    }
+
+    /**
+     * Where the dates besides the date taken are stored, as positions in the
+     * file, or -1 for each date the photo doesn't have in the expected form.
+     */
+    static class DateFields {
+        // Byte order of the GPS time stamp rationals
+        final ByteOrder order;
+        int modified = -1;
+        int digitized = -1;
+        int gpsDate = -1;
+        // The hours, minutes and seconds rationals, 24 bytes
+        int gpsTime = -1;
+
+        DateFields(ByteOrder order) {
+            this.order = order;
+        }
+    }
+
+    /**
+     * Returns the original date, ExifDate.NONE if the header has no original
+     * date, or null if the header could not be parsed by this reader.
+     */
+    public static ExifDate read(File file) throws IOException {
+        return parse(readPrefix(file));
+    }
+
+    /**
+     * Reads the start of the file into a buffer owned by the calling thread.
+     * The buffer is only valid until the next call on the same thread.
+     */
+    static ByteBuffer readPrefix(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readPrefix(channel);
+        }
+    }
+
+    // As readPrefix(File), from a channel that is already open
+    static ByteBuffer readPrefix(FileChannel channel) throws IOException {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // Keep reading until the prefix is full or the file ends
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static ExifDate parse(ByteBuffer buffer) {
+        ByteBuffer jpeg = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ExifSegment segment = findExifSegment(jpeg);
+        if (segment == null) {
+            return null;
+        }
+        if (segment == ExifSegment.MISSING) {
+            return ExifDate.NONE;
+        }
+        return parseTiff(jpeg, segment.tiffStart(), Math.min(segment.end, jpeg.limit()));
+    }
+
+    /**
+     * Walks the JPEG markers to the first EXIF APP1 segment. Returns
+     * ExifSegment.MISSING if the image data starts first, or null if the
+     * prefix is not a JPEG header this reader understands.
+     */
+    static ExifSegment findExifSegment(ByteBuffer buffer) {
+        ByteBuffer jpeg = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int limit = jpeg.limit();
+
+        if (limit < 4 || (jpeg.getShort(0) & 0xFFFF) != 0xFFD8) {
+            return null;
+        }
+
+        int pos = 2;
+        while (pos + 4 <= limit) {
+            if ((jpeg.get(pos) & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = jpeg.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte before the actual marker
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                // Reached the image data without finding EXIF
+                return ExifSegment.MISSING;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Markers without a length
+                pos += 2;
+                continue;
+            }
+
+            int segmentLength = jpeg.getShort(pos + 2) & 0xFFFF;
+            if (segmentLength < 2) {
+                return null;
+            }
+            int dataStart = pos + 4;
+            int segmentEnd = pos + 2 + segmentLength;
+            if (marker == 0xE1 && isExifHeader(jpeg, dataStart, segmentEnd)) {
+                return new ExifSegment(pos, segmentEnd);
+            }
+            pos = segmentEnd;
+        }
+
+        // Ran out of prefix before finding EXIF or the image data
+        return null;
+    }
+
+    private static boolean isExifHeader(ByteBuffer jpeg, int start, int end) {
+        if (start + 6 > end || start + 6 > jpeg.limit()) {
+            return false;
+        }
+        return jpeg.get(start) == 'E' && jpeg.get(start + 1) == 'x' && jpeg.get(start + 2) == 'i'
+            && jpeg.get(start + 3) == 'f' && jpeg.get(start + 4) == 0 && jpeg.get(start + 5) == 0;
+    }
+
+    private static ExifDate parseTiff(ByteBuffer jpeg, int tiffStart, int end) {
+        ByteBuffer tiff = tiffBuffer(jpeg, tiffStart, end);
+        if (tiff == null) {
+            return null;
+        }
+
+        int exifPointer = findEntry(tiff, tiffStart, tiff.getInt(tiffStart + 4), end, TAG_EXIF_IFD_POINTER);
+        if (exifPointer <= 0) {
+            return exifPointer == 0 ? ExifDate.NONE : null;
+        }
+        int exifIfdOffset = tiff.getInt(exifPointer + 8);
+
+        if (findEntry(tiff, tiffStart, exifIfdOffset, end, TAG_OFFSET_TIME_ORIGINAL) != 0) {
+            // Time zone offsets change how the date is interpreted; leave those to metadata-extractor
+            return null;
+        }
+
+        int dateEntry = findEntry(tiff, tiffStart, exifIfdOffset, end, TAG_DATE_TIME_ORIGINAL);
+        if (dateEntry <= 0) {
+            return dateEntry == 0 ? ExifDate.NONE : null;
+        }
+        int count = tiff.getInt(dateEntry + 4);
+        if ((tiff.getShort(dateEntry + 2) & 0xFFFF) != TYPE_ASCII || count < DATE_LENGTH + 1) {
+            return null;
+        }
+        int valueStart = valuePosition(tiffStart, tiff.getInt(dateEntry + 8), DATE_LENGTH, end);
+        if (valueStart < 0) {
+            return null;
+        }
+
+        long originalTime = parseDate(tiff, valueStart);
+        if (originalTime == ScannedPhoto.NO_DATE) {
+            return null;
+        }
+
+        int subSecEntry = findEntry(tiff, tiffStart, exifIfdOffset, end, TAG_SUB_SEC_TIME_ORIGINAL);
+        if (subSecEntry == -1) {
+            return null;
+        }
+        if (subSecEntry > 0) {
+            int millis = parseSubSeconds(tiff, tiffStart, subSecEntry, end);
+            if (millis < 0) {
+                return null;
+            }
+            originalTime += millis;
+        }
+
+        int recordEntry = findEntry(tiff, tiffStart, exifIfdOffset, end, ShiftRecord.TAG);
+        ShiftRecord shiftRecord = null;
+        if (recordEntry > 0 && (tiff.getShort(recordEntry + 2) & 0xFFFF) == TYPE_ASCII
+                && tiff.getInt(recordEntry + 4) == ShiftRecord.LENGTH + 1) {
+            int recordStart = valuePosition(tiffStart, tiff.getInt(recordEntry + 8), ShiftRecord.LENGTH, end);
+            if (recordStart < 0) {
+                return null;
+            }
+            byte[] value = new byte[ShiftRecord.LENGTH];
+            tiff.get(recordStart, value);
+            shiftRecord = ShiftRecord.parse(new String(value, StandardCharsets.US_ASCII), recordStart);
+        }
+
+        return new ExifDate(originalTime, valueStart, count, shiftRecord);
+    }
+
+    /**
+     * Finds the dates besides the date taken in a header read with
+     * readPrefix(). Returns null if the header could not be parsed by this
+     * reader or a date lies beyond the prefix, so the caller can't rely on
+     * the positions covering every date the photo has.
+     */
+    static DateFields findDateFields(ByteBuffer buffer) {
+        ByteBuffer jpeg = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ExifSegment segment = findExifSegment(jpeg);
+        if (segment == null || segment == ExifSegment.MISSING) {
+            return segment == null ? null : new DateFields(ByteOrder.BIG_ENDIAN);
+        }
+        int tiffStart = segment.tiffStart();
+        int end = Math.min(segment.end, jpeg.limit());
+        ByteBuffer tiff = tiffBuffer(jpeg, tiffStart, end);
+        if (tiff == null) {
+            return null;
+        }
+
+        DateFields fields = new DateFields(tiff.order());
+        int ifd0 = tiff.getInt(tiffStart + 4);
+        fields.modified = asciiValue(tiff, tiffStart, ifd0, end, TAG_DATE_TIME, DATE_LENGTH);
+        int exifIfd = pointedIfd(tiff, tiffStart, ifd0, end, TAG_EXIF_IFD_POINTER);
+        if (exifIfd > 0) {
+            fields.digitized = asciiValue(tiff, tiffStart, exifIfd, end, TAG_DATE_TIME_DIGITIZED, DATE_LENGTH);
+        }
+        int gpsIfd = pointedIfd(tiff, tiffStart, ifd0, end, TAG_GPS_IFD_POINTER);
+        if (gpsIfd > 0) {
+            fields.gpsDate = asciiValue(tiff, tiffStart, gpsIfd, end, TAG_GPS_DATE_STAMP, GPS_DATE_LENGTH);
+            fields.gpsTime = gpsTimeValue(tiff, tiffStart, gpsIfd, end);
+        }
+        if (fields.modified == OUTSIDE || exifIfd == OUTSIDE || fields.digitized == OUTSIDE
+                || gpsIfd == OUTSIDE || fields.gpsDate == OUTSIDE || fields.gpsTime == OUTSIDE) {
+            return null;
+        }
+        return fields;
+    }
+
+    // A view of the TIFF block in its byte order, or null if it has no valid TIFF header
+    private static ByteBuffer tiffBuffer(ByteBuffer jpeg, int tiffStart, int end) {
+        if (tiffStart + 8 > end) {
+            return null;
+        }
+        ByteBuffer tiff = jpeg.duplicate();
+        if (tiff.get(tiffStart) == 'I' && tiff.get(tiffStart + 1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(tiffStart) == 'M' && tiff.get(tiffStart + 1) == 'M') {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return null;
+        }
+        return tiff.getShort(tiffStart + 2) == 42 ? tiff : null;
+    }
+
+    // Offset of the IFD a pointer tag leads to, 0 if there is none, or OUTSIDE
+    private static int pointedIfd(ByteBuffer tiff, int tiffStart, int ifdOffset, int end, int tag) {
+        int entry = findEntry(tiff, tiffStart, ifdOffset, end, tag);
+        if (entry <= 0) {
+            return entry == 0 ? 0 : OUTSIDE;
+        }
+        return tiff.getInt(entry + 8);
+    }
+
+    /**
+     * Position of an ASCII value of length characters and a NUL, -1 if the
+     * tag is missing or holds something else, or OUTSIDE.
+     */
+    private static int asciiValue(ByteBuffer tiff, int tiffStart, int ifdOffset, int end, int tag, int length) {
+        int entry = findEntry(tiff, tiffStart, ifdOffset, end, tag);
+        if (entry <= 0) {
+            return entry == 0 ? -1 : OUTSIDE;
+        }
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII || tiff.getInt(entry + 4) != length + 1) {
+            return -1;
+        }
+        int valueStart = valuePosition(tiffStart, tiff.getInt(entry + 8), length + 1, end);
+        if (valueStart < 0) {
+            return OUTSIDE;
+        }
+        return tiff.get(valueStart + length) == 0 ? valueStart : -1;
+    }
+
+    // Position of the three GPS time rationals, -1 if they are missing or malformed, or OUTSIDE
+    private static int gpsTimeValue(ByteBuffer tiff, int tiffStart, int ifdOffset, int end) {
+        int entry = findEntry(tiff, tiffStart, ifdOffset, end, TAG_GPS_TIME_STAMP);
+        if (entry <= 0) {
+            return entry == 0 ? -1 : OUTSIDE;
+        }
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_RATIONAL || tiff.getInt(entry + 4) != 3) {
+            return -1;
+        }
+        int valueStart = valuePosition(tiffStart, tiff.getInt(entry + 8), 24, end);
+        if (valueStart < 0) {
+            return OUTSIDE;
+        }
+        return valueStart;
+    }
+
+    /**
+     * Returns the absolute position of the IFD entry with the given tag, 0 if
+     * the IFD has no such entry, or -1 if the IFD lies outside the readable range.
+     */
+    static int findEntry(ByteBuffer tiff, int tiffStart, int ifdOffset, int end, int tag) {
+        // Compared as offsets, so a huge offset in a corrupt header can't overflow past the check
+        if (ifdOffset < 8 || ifdOffset > end - tiffStart - 2) {
+            return -1;
+        }
+        int ifd = tiffStart + ifdOffset;
+        int entryCount = tiff.getShort(ifd) & 0xFFFF;
+        if (ifd + 2 + entryCount * 12 > end) {
+            return -1;
+        }
+        for (int i = 0; i < entryCount; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    // Position of count bytes at offset from the TIFF header, or -1 if they don't all lie before end
+    private static int valuePosition(int tiffStart, int offset, int count, int end) {
+        return offset >= 0 && offset <= end - tiffStart - count ? tiffStart + offset : -1;
+    }
+
+    // Parses "yyyy:MM:dd HH:mm:ss" in the default time zone, the zone PhotoWriter writes dates in
+    static long parseDate(ByteBuffer tiff, int start) {
+        int year = digits(tiff, start, 4);
+        int month = digits(tiff, start + 5, 2);
+        int day = digits(tiff, start + 8, 2);
+        int hour = digits(tiff, start + 11, 2);
+        int minute = digits(tiff, start + 14, 2);
+        int second = digits(tiff, start + 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0
+                || tiff.get(start + 4) != ':' || tiff.get(start + 7) != ':' || tiff.get(start + 10) != ' '
+                || tiff.get(start + 13) != ':' || tiff.get(start + 16) != ':') {
+            return ScannedPhoto.NO_DATE;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second)
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+        } catch (DateTimeException e) {
+            return ScannedPhoto.NO_DATE;
+        }
+    }
+
+    // Returns the sub-second value in milliseconds, or -1 if it is not a plain digit string
+    private static int parseSubSeconds(ByteBuffer tiff, int tiffStart, int entry, int end) {
+        int count = tiff.getInt(entry + 4);
+        if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII || count < 0) {
+            return -1;
+        }
+        int start = count <= 4 ? entry + 8 : valuePosition(tiffStart, tiff.getInt(entry + 8), count, end);
+        if (start < 0) {
+            return -1;
+        }
+
+        int millis = 0;
+        int digitCount = 0;
+        for (int i = 0; i < count; i++) {
+            byte b = tiff.get(start + i);
+            if (b == 0 || b == ' ') {
+                break;
+            }
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            if (digitCount < 3) {
+                millis = millis * 10 + (b - '0');
+            }
+            digitCount++;
+        }
+        for (int i = digitCount; i < 3; i++) {
+            millis *= 10;
+        }
+        return millis;
+    }
+
+    private static int digits(ByteBuffer tiff, int start, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = tiff.get(start + i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Pulls the small JPEG thumbnail that cameras embed in IFD1 of the EXIF
+ * segment, so a preview never needs the full image decoded.
+ */
+public final class ExifThumbnailReader {
+    private static final int TAG_JPEG_OFFSET = 0x0201;
+    private static final int TAG_JPEG_LENGTH = 0x0202;
+
+    private ExifThumbnailReader() {
+    }
+
+    /**
+     * Returns the encoded thumbnail, or null if the photo has none within
+     * the header prefix.
+     */
+    public static byte[] read(File file) throws IOException {
+        ByteBuffer prefix = ExifDateReader.readPrefix(file);
+        ExifDateReader.ExifSegment segment = ExifDateReader.findExifSegment(prefix);
+        if (segment == null || segment == ExifDateReader.ExifSegment.MISSING) {
+            return null;
+        }
+        int tiffStart = segment.tiffStart();
+        int end = Math.min(segment.end, prefix.limit());
+        if (tiffStart + 8 > end) {
+            return null;
+        }
+
+        ByteBuffer tiff = prefix.duplicate();
+        if (tiff.get(tiffStart) == 'I' && tiff.get(tiffStart + 1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(tiffStart) == 'M' && tiff.get(tiffStart + 1) == 'M') {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return null;
+        }
+
+        // IFD1 follows IFD0 through the pointer after IFD0's last entry
+        int ifd0 = tiffStart + tiff.getInt(tiffStart + 4);
+        if (ifd0 < tiffStart + 8 || ifd0 > end - 2) {
+            return null;
+        }
+        int nextPointer = ifd0 + 2 + (tiff.getShort(ifd0) & 0xFFFF) * 12;
+        if (nextPointer > end - 4) {
+            return null;
+        }
+        int ifd1Offset = tiff.getInt(nextPointer);
+        if (ifd1Offset == 0) {
+            return null;
+        }
+
+        int offsetEntry = ExifDateReader.findEntry(tiff, tiffStart, ifd1Offset, end, TAG_JPEG_OFFSET);
+        int lengthEntry = ExifDateReader.findEntry(tiff, tiffStart, ifd1Offset, end, TAG_JPEG_LENGTH);
+        if (offsetEntry <= 0 || lengthEntry <= 0) {
+            return null;
+        }
+        int start = tiffStart + tiff.getInt(offsetEntry + 8);
+        int length = tiff.getInt(lengthEntry + 8);
+        if (start < tiffStart || start > end || length <= 0 || length > end - start) {
+            return null;
+        }
+
+        byte[] thumbnail = new byte[length];
+        prefix.get(start, thumbnail);
+        return thumbnail;
+    }
+}
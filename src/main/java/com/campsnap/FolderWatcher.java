@@ -0,0 +1,259 @@
+package com.campsnap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches folders for new photos and hands them over in batches once they
+ * have been completely written.
+ *
+ * Photos already in the folders when watching starts are noted as they are
+ * and left alone; after that only file system events are looked at. If the
+ * system drops events, only the affected directory is listed again and
+ * compared with what is noted, so photos copied in with their original
+ * modification time are still found. A photo counts
+ * as complete when its size and modification time have not changed for the
+ * settle time. Photos that become complete together are handed over
+ * together, up to the batch size, so a card copied in one go is processed in
+ * a few large batches rather than thousands of single files.
+ */
+public class FolderWatcher implements Closeable {
+    public interface Handler {
+        // Called on the watching thread; the next batch waits until this returns
+        void photosReady(List<File> photos) throws InterruptedException;
+    }
+
+    private static class FileState {
+        final long size;
+        final long lastModified;
+        final long lastChange;
+
+        FileState(long size, long lastModified, long lastChange) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.lastChange = lastChange;
+        }
+
+        boolean sameAs(FileState other) {
+            return other != null && size == other.size && lastModified == other.lastModified;
+        }
+    }
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final boolean recursive;
+    private final long settleMillis;
+    private final int batchSize;
+
+    // Photos seen changing, sorted so batches follow file name order
+    private final Map<Path, FileState> pending = new TreeMap<>();
+    // Photos already handed over, as they were afterwards, so writing them does not trigger them again,
+    // and photos that were there before watching started
+    private final Map<Path, FileState> handled = new HashMap<>();
+
+    public FolderWatcher(List<Path> roots, boolean recursive, long settleMillis, int batchSize) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.recursive = recursive;
+        this.settleMillis = settleMillis;
+        this.batchSize = batchSize;
+        for (Path root : roots) {
+            register(root, false);
+        }
+    }
+
+    /**
+     * Watches until stop() is called from another thread, passing each
+     * batch of complete photos to the handler.
+     */
+    public void run(Handler handler) throws IOException, InterruptedException {
+        try {
+            while (true) {
+                // Sleep until something happens, or until the next pending photo may have settled
+                long wait = nextSettleTime() - System.currentTimeMillis();
+                WatchKey key = pending.isEmpty() ? watchService.take()
+                    : watchService.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+
+                List<File> ready = takeSettled();
+                for (int i = 0; i < ready.size(); i += batchSize) {
+                    List<File> batch = ready.subList(i, Math.min(ready.size(), i + batchSize));
+                    handler.photosReady(batch);
+                    for (File photo : batch) {
+                        FileState state = stat(photo.toPath(), 0);
+                        if (state != null) {
+                            handled.put(photo.toPath(), state);
+                        }
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed from another thread; stop watching
+        }
+    }
+
+    // Makes run() return; safe to call from any thread
+    public void stop() throws IOException {
+        watchService.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were dropped, so look for photos in this one directory that are new or changed
+                try (Stream<Path> children = Files.list(directory)) {
+                    children.forEach(this::fileChanged);
+                }
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(path);
+                handled.remove(path);
+            } else if (recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                register(path, true);
+            } else {
+                fileChanged(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void fileChanged(Path path) {
+        // Skip our own temporary files and other hidden files
+        if (!PhotoFiles.isJpeg(path) || path.getFileName().toString().startsWith(".")) {
+            return;
+        }
+        FileState state = stat(path, System.currentTimeMillis());
+        if (state == null || state.sameAs(handled.get(path))) {
+            return;
+        }
+        FileState previous = pending.get(path);
+        if (!state.sameAs(previous)) {
+            pending.put(path, state);
+        }
+    }
+
+    /**
+     * Removes and returns the pending photos that have not changed for the
+     * settle time. A photo that changed without an event being seen yet is
+     * given another settle period.
+     */
+    private List<File> takeSettled() {
+        long now = System.currentTimeMillis();
+        List<File> ready = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, FileState>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, FileState> entry = it.next();
+            if (now - entry.getValue().lastChange < settleMillis) {
+                continue;
+            }
+            FileState current = stat(entry.getKey(), now);
+            if (current == null) {
+                it.remove();
+            } else if (!current.sameAs(entry.getValue())) {
+                entry.setValue(current);
+            } else {
+                it.remove();
+                ready.add(entry.getKey().toFile());
+            }
+        }
+        return ready;
+    }
+
+    private long nextSettleTime() {
+        long next = Long.MAX_VALUE;
+        for (FileState state : pending.values()) {
+            next = Math.min(next, state.lastChange + settleMillis);
+        }
+        return next;
+    }
+
+    /**
+     * Starts watching a directory, and its subdirectories when recursive.
+     * Photos already in a directory that appeared while watching were copied
+     * in before it could be registered, so they are treated as new.
+     */
+    private void register(Path directory, boolean appeared) throws IOException {
+        if (!recursive) {
+            watch(directory);
+            try (Stream<Path> children = Files.list(directory)) {
+                children.forEach(this::remember);
+            }
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+                Path path = it.next();
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    watch(path);
+                } else if (appeared) {
+                    fileChanged(path);
+                } else {
+                    remember(path);
+                }
+            }
+        }
+    }
+
+    // Notes a photo that was there before watching started, so only a change to it counts
+    private void remember(Path path) {
+        FileState state = PhotoFiles.isJpeg(path) ? stat(path, 0) : null;
+        if (state != null) {
+            handled.put(path, state);
+        }
+    }
+
+    private void watch(Path directory) throws IOException {
+        WatchKey key = directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    private static FileState stat(Path path, long now) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+        } catch (IOException e) {
+            // Deleted or renamed since the event
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+
+/**
+ * Reads the original date with metadata-extractor, for the few photos whose
+ * header ExifDateReader gives up on. The library is only loaded the first
+ * time such a photo turns up.
+ */
+final class FullMetadataReader {
+    private FullMetadataReader() {
+    }
+
+    // Returns the original date and any ShiftRecord, with ScannedPhoto.NO_DATE if the photo has no date
+    static ScannedPhoto read(File file) throws IOException {
+        Metadata metadata;
+        try {
+            metadata = ImageMetadataReader.readMetadata(file);
+        } catch (ImageProcessingException e) {
+            throw new IOException("Could not read the metadata of " + file.getName(), e);
+        }
+        ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        // Read as local time, like ExifDateReader; without a zone the library would take it as UTC
+        Date date = directory != null ? directory.getDateOriginal(TimeZone.getDefault()) : null;
+        ShiftRecord shiftRecord = directory != null
+            ? ShiftRecord.parse(directory.getString(ShiftRecord.TAG), -1)
+            : null;
+        return new ScannedPhoto(file, date != null ? date.getTime() : ScannedPhoto.NO_DATE, -1, shiftRecord);
+    }
+}
@@ -0,0 +1,131 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the headers of photos ahead of the threads that parse them.
+ *
+ * Reads are started asynchronously as soon as a photo is queued, so the
+ * storage always has a few requests to work on while headers are parsed, and
+ * on a network share the round trips overlap instead of adding up. How many
+ * reads are outstanding is set by an IoConcurrencyLimit, and headers go into
+ * a fixed set of reusable buffers.
+ */
+public class HeaderPrefetcher {
+    /**
+     * The header of one photo, being read or already read.
+     */
+    public class Prefetch implements CompletionHandler<Integer, Void> {
+        private final File file;
+        private final ByteBuffer buffer;
+        private final CompletableFuture<ByteBuffer> header = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private AsynchronousFileChannel channel;
+
+        private Prefetch(File file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Waits for the header and returns it, positioned at the start of the
+         * file. It is only valid until release() is called.
+         */
+        public ByteBuffer await() throws IOException {
+            try {
+                return header.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + file.getName());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Could not read " + file.getName(), e.getCause());
+            }
+        }
+
+        // Hands the buffer back for another photo once the read is over
+        public void release() {
+            header.whenComplete((result, error) -> buffers.offer(buffer));
+        }
+
+        @Override
+        public void completed(Integer count, Void attachment) {
+            if (count >= 0 && buffer.hasRemaining()) {
+                // Short read; carry on until the buffer is full or the file ends
+                channel.read(buffer, buffer.position(), null, this);
+                return;
+            }
+            finish(null);
+        }
+
+        @Override
+        public void failed(Throwable error, Void attachment) {
+            finish(error);
+        }
+
+        private void start() {
+            try {
+                channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+                channel.read(buffer, 0, null, this);
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        private void finish(Throwable error) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                // Nothing was written, so the read result still stands
+            }
+            readLimit.release(System.nanoTime() - startNanos);
+            if (error != null) {
+                header.completeExceptionally(error);
+            } else {
+                buffer.flip();
+                header.complete(buffer);
+            }
+        }
+    }
+
+    private final IoConcurrencyLimit readLimit;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    // At most window headers are held at once; readLimit should not allow more reads than that
+    public HeaderPrefetcher(IoConcurrencyLimit readLimit, int window) {
+        this.readLimit = readLimit;
+        this.buffers = new ArrayBlockingQueue<>(window);
+        for (int i = 0; i < window; i++) {
+            buffers.add(ByteBuffer.allocate(ExifDateReader.PREFIX_SIZE));
+        }
+    }
+
+    // Starts reading the header of file, waiting while too many reads are outstanding
+    public Prefetch start(File file) throws InterruptedException {
+        ByteBuffer buffer = buffers.take();
+        buffer.clear();
+        try {
+            readLimit.acquire();
+        } catch (InterruptedException e) {
+            buffers.offer(buffer);
+            throw e;
+        }
+        Prefetch prefetch = new Prefetch(file, buffer);
+        prefetch.start();
+        return prefetch;
+    }
+}
@@ -0,0 +1,101 @@
+package com.campsnap;
+
+/**
+ * Limits how many reads or writes run at once, adjusting the limit to the
+ * latency the storage shows.
+ *
+ * The latency of an operation on an otherwise idle device is the baseline.
+ * How much slower operations are than that tells how many of them are only
+ * waiting in the device's queue, as on a busy hard disk or network share.
+ * While hardly any are waiting the limit grows, and when several are it
+ * shrinks. Every so often the limit is halved for a moment to measure the
+ * baseline again, so neither a run of reads served from the operating
+ * system's cache nor a slowly filling queue leaves it wrong for long.
+ */
+public class IoConcurrencyLimit {
+    // Operations averaged before the limit is adjusted
+    private static final int WINDOW = 16;
+    // Windows between measurements of the baseline
+    private static final int PROBE_INTERVAL = 30;
+    // Fewer operations waiting than this lets the limit grow, more than QUEUE_HIGH makes it shrink
+    private static final double QUEUE_LOW = 1;
+    private static final double QUEUE_HIGH = 3;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private int limit;
+    private int inUse;
+
+    private long windowNanos;
+    private int windowCount;
+    private int windows;
+    private double baselineNanos;
+    // The limit to return to after a baseline measurement, or 0 when none is running
+    private int probedLimit;
+
+    // Starts halfway and stays between 1 and maxLimit
+    public IoConcurrencyLimit(int maxLimit) {
+        this(1, maxLimit, Math.max(1, maxLimit / 2));
+    }
+
+    public IoConcurrencyLimit(int minLimit, int maxLimit, int initialLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits: " + minLimit + " to " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    // Blocks until fewer operations than the limit are running
+    public synchronized void acquire() throws InterruptedException {
+        while (inUse >= limit) {
+            wait();
+        }
+        inUse++;
+    }
+
+    // Ends an operation started with acquire(), reporting how long it took
+    public synchronized void release(long latencyNanos) {
+        inUse--;
+        windowNanos += latencyNanos;
+        windowCount++;
+        if (windowCount == WINDOW) {
+            adjust((double) windowNanos / windowCount);
+            windowNanos = 0;
+            windowCount = 0;
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    private void adjust(double recentNanos) {
+        windows++;
+        if (probedLimit != 0) {
+            // That window ran at half the limit; take it as the new baseline
+            baselineNanos = recentNanos;
+            limit = probedLimit;
+            probedLimit = 0;
+            return;
+        }
+        if (baselineNanos == 0 || recentNanos < baselineNanos) {
+            baselineNanos = recentNanos;
+        }
+        if (windows % PROBE_INTERVAL == 0) {
+            probedLimit = limit;
+            limit = Math.max(minLimit, limit / 2);
+            return;
+        }
+
+        // Little's law: the share of the latency above the baseline is time spent queueing
+        double queued = limit * (1 - baselineNanos / recentNanos);
+        if (queued < QUEUE_LOW) {
+            limit = Math.min(maxLimit, limit + 1);
+        } else if (queued > QUEUE_HIGH) {
+            limit = Math.max(minLimit, limit - 1);
+        }
+    }
+}
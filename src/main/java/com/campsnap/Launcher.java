@@ -0,0 +1,15 @@
+package com.campsnap;
+
+/**
+ * Entry point of the jar. Opens the window when started without arguments
+ * and runs the command line version otherwise, so batch runs never load AWT.
+ */
+public class Launcher {
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            CommandLine.main(args);
+        } else {
+            MainWindow.main(args);
+        }
+    }
+}
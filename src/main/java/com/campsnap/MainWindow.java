@@ -3,48 +3,48 @@ package com.campsnap;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.RowFilter;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
-import javax.swing.table.DefaultTableModel;
-
-import org.apache.commons.imaging.Imaging;
-import org.apache.commons.imaging.common.ImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
-import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.imaging.ImageProcessingException;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifSubIFDDirectory;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.table.TableRowSorter;
 
 public class MainWindow extends JFrame {
-    private DefaultTableModel tableModel;
+    private PhotoTableModel tableModel;
     private JTable photoTable;
     private JLabel dateDifferenceLabel;
     private File[] selectedFiles;
@@ -54,6 +54,29 @@ public class MainWindow extends JFrame {
     private JRadioButton autoTimeButton;
     private JRadioButton manualTimeButton;
     private boolean useAutoTime = true;
+    private ScanWorker scanWorker;
+    private Timer adjustmentTimer;
+    private final MetadataCache metadataCache = new MetadataCache();
+    private boolean metadataIndexOpened;
+    private JLabel cacheStatsLabel;
+    private JButton runSummaryButton;
+    private StageTimings lastRunTimings;
+    private String lastRunName;
+    private TableRowSorter<PhotoTableModel> tableSorter;
+    private JPanel progressPanel;
+    private JProgressBar progressBar;
+    private JLabel rateLabel;
+    private UpdateWorker updateWorker;
+    private JButton selectButton;
+    private JButton updateButton;
+    private JSpinner threadCountSpinner;
+    private JCheckBox verifyBox;
+    private final Map<DateTag, JCheckBox> dateTagBoxes = new EnumMap<>(DateTag.class);
+    private JComboBox<RerunMode> rerunModeBox;
+    private ThumbnailCache thumbnailCache;
+
+    private static final int THUMBNAIL_HEIGHT = 40;
+    private static final long THUMBNAIL_CACHE_BYTES = 16L * 1024 * 1024;
 
     public MainWindow() {
         // Set up the window
@@ -63,7 +86,7 @@ public class MainWindow extends JFrame {
         setLocationRelativeTo(null); // Center on screen
 
         // Create the button
-        JButton selectButton = new JButton("Select Photos");
+        selectButton = new JButton("Select Photos");
         selectButton.setPreferredSize(new Dimension(120, 30));
         selectButton.addActionListener(e -> selectPhotos());
 
@@ -73,11 +96,51 @@ public class MainWindow extends JFrame {
         dateDifferenceLabel.setHorizontalAlignment(SwingConstants.RIGHT);
 
         // Create the table
-        String[] columnNames = {"File Name", "Date Taken", "New Date"};
-        tableModel = new DefaultTableModel(columnNames, 0);
+        tableModel = new PhotoTableModel();
         photoTable = new JTable(tableModel);
+        tableSorter = new TableRowSorter<>(tableModel);
+        tableSorter.setComparator(1, PhotoTableModel.DATE_ORDER);
+        tableSorter.setComparator(2, PhotoTableModel.DATE_ORDER);
+        photoTable.setRowSorter(tableSorter);
+        photoTable.getColumnModel().getColumn(1).setCellRenderer(new PhotoTableModel.DateCellRenderer());
+        photoTable.getColumnModel().getColumn(2).setCellRenderer(new PhotoTableModel.DateCellRenderer());
+
+        // Previews come from the thumbnail inside each photo and are only loaded for rows on screen
+        thumbnailCache = new ThumbnailCache(THUMBNAIL_HEIGHT, THUMBNAIL_CACHE_BYTES, photoTable::repaint);
+        tableSorter.setSortable(PhotoTableModel.PREVIEW_COLUMN, false);
+        photoTable.getColumnModel().getColumn(PhotoTableModel.PREVIEW_COLUMN)
+            .setCellRenderer(new PhotoTableModel.ThumbnailRenderer(thumbnailCache));
+        photoTable.getColumnModel().getColumn(PhotoTableModel.PREVIEW_COLUMN).setPreferredWidth(THUMBNAIL_HEIGHT * 2);
+        photoTable.moveColumn(PhotoTableModel.PREVIEW_COLUMN, 0);
+        photoTable.setRowHeight(THUMBNAIL_HEIGHT + 4);
         JScrollPane scrollPane = new JScrollPane(photoTable);
 
+        // Filter rows by file name without touching the model
+        JTextField filterField = new JTextField(15);
+        filterField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            private void update() {
+                String text = filterField.getText().trim();
+                tableSorter.setRowFilter(text.isEmpty()
+                    ? null
+                    : RowFilter.regexFilter("(?i)" + Pattern.quote(text), 0));
+            }
+
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                update();
+            }
+        });
+
         // Create layout
         setLayout(new BorderLayout());
         
@@ -85,6 +148,8 @@ public class MainWindow extends JFrame {
         JPanel topPanel = new JPanel(new BorderLayout());
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(selectButton);
+        buttonPanel.add(new JLabel("Filter:"));
+        buttonPanel.add(filterField);
         
         // Create time adjustment panel
         JPanel timeAdjustPanel = new JPanel();
@@ -129,30 +194,30 @@ public class MainWindow extends JFrame {
         timeAdjustPanel.add(manualTimeButton);
         timeAdjustPanel.add(manualPanel);
         
+        // Recalculate new dates shortly after the last change, rather than on every keystroke
+        adjustmentTimer = new Timer(250, e -> applyTimeAdjustment());
+        adjustmentTimer.setRepeats(false);
+
         // Add action listeners for radio buttons and text field
         autoTimeButton.addActionListener(e -> {
             boolean isAuto = autoTimeButton.isSelected();
             useAutoTime = isAuto;
             daysField.setEnabled(!isAuto);
-            if (selectedFiles != null && selectedFiles.length > 0) {
-                processPhotos(selectedFiles);
-            }
+            adjustmentTimer.restart();
         });
         
         manualTimeButton.addActionListener(e -> {
             boolean isManual = manualTimeButton.isSelected();
             useAutoTime = !isManual;
             daysField.setEnabled(isManual);
-            if (selectedFiles != null && selectedFiles.length > 0) {
-                processPhotos(selectedFiles);
-            }
+            adjustmentTimer.restart();
         });
 
         // Add document listener to days field
         daysField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             private void update() {
-                if (selectedFiles != null && selectedFiles.length > 0 && !useAutoTime) {
-                    processPhotos(selectedFiles);
+                if (!useAutoTime) {
+                    adjustmentTimer.restart();
                 }
             }
             
@@ -177,7 +242,39 @@ public class MainWindow extends JFrame {
         
         topPanel.add(buttonPanel, BorderLayout.WEST);
         topPanel.add(dateDifferenceLabel, BorderLayout.CENTER);
-        topPanel.add(timeAdjustPanel, BorderLayout.SOUTH);
+
+        // The date taken is always shifted; these follow it in photos that have them, when ticked
+        JPanel datesPanel = new JPanel();
+        datesPanel.setBorder(BorderFactory.createTitledBorder("Also Shift"));
+        for (DateTag tag : DateTag.values()) {
+            if (tag != DateTag.ORIGINAL) {
+                JCheckBox box = new JCheckBox(tag.getLabel(), false);
+                dateTagBoxes.put(tag, box);
+                datesPanel.add(box);
+            }
+        }
+
+        // Photos carrying a record of an earlier update are skipped or shifted from their old date
+        JPanel rerunPanel = new JPanel();
+        rerunPanel.setBorder(BorderFactory.createTitledBorder("Shifted Before"));
+        rerunModeBox = new JComboBox<>(RerunMode.values());
+        // Recording shifts costs the in-place patch on a photo's first update, so it is chosen, not default
+        rerunModeBox.setSelectedItem(RerunMode.IGNORE);
+        rerunModeBox.setToolTipText("What to do with photos an earlier update already shifted");
+        rerunModeBox.addActionListener(e -> {
+            tableModel.setRerunMode(getRerunMode());
+            adjustmentTimer.restart();
+        });
+        tableModel.setRerunMode(getRerunMode());
+        rerunPanel.add(rerunModeBox);
+
+        JPanel optionsPanel = new JPanel(new BorderLayout());
+        optionsPanel.add(datesPanel, BorderLayout.CENTER);
+        optionsPanel.add(rerunPanel, BorderLayout.EAST);
+        JPanel adjustPanel = new JPanel(new BorderLayout());
+        adjustPanel.add(timeAdjustPanel, BorderLayout.CENTER);
+        adjustPanel.add(optionsPanel, BorderLayout.EAST);
+        topPanel.add(adjustPanel, BorderLayout.SOUTH);
         
         // Bottom panel with update options
         JPanel bottomPanel = new JPanel();
@@ -186,20 +283,81 @@ public class MainWindow extends JFrame {
         ButtonGroup updateOptionGroup = new ButtonGroup();
         JRadioButton modifyOriginalButton = new JRadioButton("Modify Original Photo");
         JRadioButton copyToFolderButton = new JRadioButton("Copy to Folder");
+        JRadioButton copyToArchiveButton = new JRadioButton("Copy to Archive");
+        copyToArchiveButton.setToolTipText("Write the shifted copies into one ZIP or TAR file");
         updateOptionGroup.add(modifyOriginalButton);
         updateOptionGroup.add(copyToFolderButton);
+        updateOptionGroup.add(copyToArchiveButton);
         copyToFolderButton.setSelected(true); // Default option
+
+        // Patching only applies when modifying originals
+        JCheckBox patchInPlaceBox = new JCheckBox("Patch in place", true);
+        patchInPlaceBox.setToolTipText("Overwrite only the stored date instead of rewriting each photo");
+        patchInPlaceBox.setEnabled(false);
+        modifyOriginalButton.addItemListener(e -> patchInPlaceBox.setEnabled(modifyOriginalButton.isSelected()));
         
-        JButton updateButton = new JButton("Update Dates");
-        updateButton.addActionListener(e -> handleUpdateDates(modifyOriginalButton.isSelected()));
+        updateButton = new JButton("Update Dates");
+        updateButton.addActionListener(e -> handleUpdateDates(modifyOriginalButton.isSelected(),
+            copyToArchiveButton.isSelected(), patchInPlaceBox.isSelected()));
         
         bottomPanel.add(modifyOriginalButton);
+        bottomPanel.add(patchInPlaceBox);
         bottomPanel.add(copyToFolderButton);
+        bottomPanel.add(copyToArchiveButton);
+
+        verifyBox = new JCheckBox("Verify");
+        verifyBox.setToolTipText("Read back each written photo and check its date and image data");
+        // Photos inside an archive aren't read back
+        copyToArchiveButton.addItemListener(e -> verifyBox.setEnabled(!copyToArchiveButton.isSelected()));
+        bottomPanel.add(verifyBox);
         bottomPanel.add(updateButton);
+
+        threadCountSpinner = new JSpinner(new SpinnerNumberModel(BatchWriter.defaultThreadCount(), 1, 32, 1));
+        threadCountSpinner.setToolTipText("Number of photos written at the same time");
+        bottomPanel.add(new JLabel("Threads:"));
+        bottomPanel.add(threadCountSpinner);
+
+        cacheStatsLabel = new JLabel();
+        cacheStatsLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        updateCacheStatsLabel();
+        bottomPanel.add(cacheStatsLabel);
+
+        runSummaryButton = new JButton("Run Summary");
+        runSummaryButton.setToolTipText("Show how long each stage of the last scan or update took");
+        runSummaryButton.setEnabled(false);
+        runSummaryButton.addActionListener(e -> JOptionPane.showMessageDialog(this,
+            new StageSummaryPanel(lastRunTimings, lastRunName),
+            "Run Summary",
+            JOptionPane.PLAIN_MESSAGE));
+        bottomPanel.add(runSummaryButton);
+
+        // Progress panel, only shown while photos are being scanned or updated
+        progressPanel = new JPanel(new BorderLayout(10, 0));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 0, 10));
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        rateLabel = new JLabel(" ");
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            if (scanWorker != null) {
+                scanWorker.stop();
+            }
+            if (updateWorker != null) {
+                updateWorker.stop();
+            }
+        });
+        progressPanel.add(rateLabel, BorderLayout.WEST);
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.EAST);
+        progressPanel.setVisible(false);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(progressPanel, BorderLayout.NORTH);
+        southPanel.add(bottomPanel, BorderLayout.SOUTH);
         
         add(topPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
-        add(bottomPanel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
     }
 
     private void selectPhotos() {
@@ -224,84 +382,56 @@ public class MainWindow extends JFrame {
         }
     }
 
-    private void processPhotos(File[] files) {
-        // Store the selected files for later use
-        this.selectedFiles = files;
+    void processPhotos(File[] files) {
+        // Store the selected files for later use, in the order they sit on disk
+        this.selectedFiles = PhotoFiles.inLocalityOrder(files);
+
+        // Stop any scan that is still running for a previous selection or mode
+        if (scanWorker != null && !scanWorker.isDone()) {
+            scanWorker.stop();
+        }
         
         // Clear existing table data
-        while (tableModel.getRowCount() > 0) {
-            tableModel.removeRow(0);
+        tableModel.clear();
+        thumbnailCache.clear();
+
+        if (!useAutoTime) {
+            // Calculate manual time difference
+            this.timeToAdd = getManualDays() * 24L * 60L * 60L * 1000L;
+        } else {
+            // Worked out again once this selection is scanned, never kept from the previous one
+            this.timeToAdd = 0;
         }
+        tableModel.setTimeToAdd(timeToAdd, !useAutoTime);
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        Date mostRecentDate = null;
-        Date currentDate = new Date();
+        scanWorker = new ScanWorker(selectedFiles);
+        progressBar.setValue(0);
+        progressBar.setString("Scanning...");
+        rateLabel.setText(" ");
+        progressPanel.setVisible(true);
+        scanWorker.execute();
+    }
 
-        if (useAutoTime) {
-            // First pass: find the most recent date
-            for (File file : files) {
-                try {
-                    Metadata metadata = ImageMetadataReader.readMetadata(file);
-                    ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-                    
-                    if (directory != null) {
-                        Date date = directory.getDateOriginal();
-                        if (date != null && (mostRecentDate == null || date.after(mostRecentDate))) {
-                            mostRecentDate = date;
-                        }
-                    }
-                } catch (ImageProcessingException | IOException e) {
-                    e.printStackTrace();
-                }
-            }
+    // For StartupProbe, which watches rows arrive
+    PhotoTableModel getTableModel() {
+        return tableModel;
+    }
 
-            // Calculate the time difference to add
-            this.timeToAdd = 0;
-            if (mostRecentDate != null) {
-                this.timeToAdd = currentDate.getTime() - mostRecentDate.getTime();
-            }
-        } else {
-            // Calculate manual time difference
-            long days = 0;
-            try {
-                String daysText = daysField.getText().trim();
-                if (!daysText.isEmpty()) {
-                    days = Long.parseLong(daysText);
-                }
-            } catch (NumberFormatException e) {
-                // If parsing fails, use 0
+    private long getManualDays() {
+        long days = 0;
+        try {
+            String daysText = daysField.getText().trim();
+            if (!daysText.isEmpty()) {
+                days = Long.parseLong(daysText);
             }
-            
-            this.timeToAdd = days * 24L * 60L * 60L * 1000L;
+        } catch (NumberFormatException e) {
+            // If parsing fails, use 0
         }
+        return days;
+    }
 
-        // Second pass: process each photo
-        for (File file : files) {
-            try {
-                Metadata metadata = ImageMetadataReader.readMetadata(file);
-                ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-                
-                String fileName = file.getName();
-                String dateTaken = "Unknown";
-                String newDate = "Unknown";
-                
-                if (directory != null) {
-                    Date date = directory.getDateOriginal();
-                    if (date != null) {
-                        dateTaken = dateFormat.format(date);
-                        
-                        // Calculate new date by adding the time difference
-                        Date calculatedDate = new Date(date.getTime() + this.timeToAdd);
-                        newDate = dateFormat.format(calculatedDate);
-                    }
-                }
-                
-                tableModel.addRow(new Object[]{fileName, dateTaken, newDate});
-            } catch (ImageProcessingException | IOException e) {
-                e.printStackTrace();
-                tableModel.addRow(new Object[]{file.getName(), "Error reading metadata", "Error"});
-            }
-        }
+    private void updateDateDifferenceLabel(Date mostRecentDate) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
         // Update the date difference label
         if (useAutoTime && mostRecentDate != null) {
@@ -312,18 +442,164 @@ public class MainWindow extends JFrame {
                 recentDateStr, diffInDays
             ));
         } else if (!useAutoTime) {
-            String daysText = daysField.getText().trim();
-            long days = daysText.isEmpty() ? 0 : Long.parseLong(daysText);
             dateDifferenceLabel.setText(String.format(
                 "<html>Manual adjustment:<br>%d days</html>",
-                days
+                getManualDays()
             ));
         } else {
             dateDifferenceLabel.setText("No valid dates found in photos");
         }
     }
 
-    private void handleUpdateDates(boolean modifyOriginal) {
+    /**
+     * Recalculates the time to add for the current mode from the scanned dates
+     * and refreshes the table. No files are read.
+     */
+    private void applyTimeAdjustment() {
+        if (selectedFiles == null || selectedFiles.length == 0) {
+            return;
+        }
+        if (scanWorker != null && !scanWorker.isDone()) {
+            // The running scan applies the current mode when it finishes
+            return;
+        }
+        if (useAutoTime && scanWorker != null && scanWorker.isCancelled()) {
+            // The most recent date of a partial scan isn't the most recent photo
+            return;
+        }
+
+        Date mostRecentDate = null;
+        if (useAutoTime) {
+            long mostRecentTime = tableModel.getMostRecentTime();
+
+            // Calculate the time difference to add
+            this.timeToAdd = 0;
+            if (mostRecentTime != ScannedPhoto.NO_DATE) {
+                mostRecentDate = new Date(mostRecentTime);
+                this.timeToAdd = new Date().getTime() - mostRecentTime;
+            }
+        } else {
+            // Calculate manual time difference
+            this.timeToAdd = getManualDays() * 24L * 60L * 60L * 1000L;
+        }
+
+        tableModel.setTimeToAdd(timeToAdd, true);
+        updateDateDifferenceLabel(mostRecentDate);
+    }
+
+    // Loads previously scanned photos from disk the first time photos are scanned
+    private synchronized void openMetadataIndex() {
+        if (metadataIndexOpened) {
+            return;
+        }
+        metadataIndexOpened = true;
+        try {
+            MetadataIndex.open(MetadataIndex.defaultPath(), metadataCache);
+        } catch (IOException e) {
+            // Without the index every photo is simply read again
+            e.printStackTrace();
+        }
+    }
+
+    private void flushMetadataIndex() {
+        MetadataIndex index = metadataCache.getIndex();
+        if (index != null) {
+            index.flush();
+        }
+    }
+
+    private void setLastRun(StageTimings timings, String name) {
+        lastRunTimings = timings;
+        lastRunName = name;
+        runSummaryButton.setEnabled(true);
+    }
+
+    private void updateCacheStatsLabel() {
+        cacheStatsLabel.setText(String.format("Cache: %d hits, %d misses",
+            metadataCache.getHitCount(), metadataCache.getMissCount()));
+    }
+
+    /**
+     * Scans the selected photos in the background and streams rows into the
+     * table as they finish, so the window stays responsive for large selections.
+     *
+     * Each file is read at most once, and not at all when the metadata cache
+     * already has it. In automatic mode the "New Date" column is filled in once
+     * every photo has been scanned and the most recent date is known.
+     */
+    private class ScanWorker extends SwingWorker<Void, ScannedPhoto> {
+        private final File[] files;
+        private final PhotoScanner scanner =
+            new PhotoScanner(metadataCache, PhotoScanner.defaultThreadCount(), new StageTimings());
+        private final AtomicInteger scannedCount = new AtomicInteger();
+        private final long startTime = System.nanoTime();
+
+        ScanWorker(File[] files) {
+            this.files = files;
+        }
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            openMetadataIndex();
+            scanner.scan(Arrays.asList(files), photo -> {
+                publish(photo);
+                int done = scannedCount.incrementAndGet();
+                setProgress(files.length == 0 ? 100 : (int) (done * 100L / files.length));
+            });
+            return null;
+        }
+
+        @Override
+        protected void process(List<ScannedPhoto> photos) {
+            if (isCancelled()) {
+                return;
+            }
+            tableModel.addPhotos(photos);
+
+            int done = scannedCount.get();
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            progressBar.setValue(getProgress());
+            progressBar.setString(String.format("%d / %d", done, files.length));
+            rateLabel.setText(String.format("%.1f files/sec", seconds > 0 ? done / seconds : 0));
+            updateCacheStatsLabel();
+        }
+
+        @Override
+        protected void done() {
+            scanner.cancel();
+            if (isCancelled()) {
+                // A newer scan owns the panel and label if this one was replaced
+                if (scanWorker == this) {
+                    progressPanel.setVisible(false);
+                    dateDifferenceLabel.setText("Scan cancelled");
+                    timeToAdd = 0;
+                    tableModel.setTimeToAdd(0, false);
+                }
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            progressPanel.setVisible(false);
+            flushMetadataIndex();
+            updateCacheStatsLabel();
+            setLastRun(scanner.getTimings(), "scan");
+            applyTimeAdjustment();
+        }
+
+        void stop() {
+            scanner.cancel();
+            cancel(true);
+        }
+    }
+
+    private void handleUpdateDates(boolean modifyOriginal, boolean toArchive, boolean patchInPlace) {
+        if (modifyOriginal && offerResume()) {
+            return;
+        }
+
         if (selectedFiles == null || selectedFiles.length == 0) {
             JOptionPane.showMessageDialog(this,
                 "Please select photos first.",
@@ -332,6 +608,24 @@ public class MainWindow extends JFrame {
             return;
         }
 
+        if (scanWorker != null && !scanWorker.isDone()) {
+            JOptionPane.showMessageDialog(this,
+                "Please wait for the photos to finish scanning.",
+                "Scan In Progress",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        // A partial scan leaves photos unread and the automatic shift unknown
+        if (scanWorker != null && scanWorker.isCancelled()) {
+            JOptionPane.showMessageDialog(this,
+                "The scan was cancelled before every photo was read.\n" +
+                "Please select the photos again to scan them before updating.",
+                "Scan Cancelled",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
         if (modifyOriginal) {
             // Show confirmation dialog for modifying original files
             int result = JOptionPane.showConfirmDialog(this,
@@ -342,7 +636,26 @@ public class MainWindow extends JFrame {
                 JOptionPane.WARNING_MESSAGE);
 
             if (result == JOptionPane.YES_OPTION) {
-                updateOriginalPhotos();
+                updateOriginalPhotos(patchInPlace);
+            }
+        } else if (toArchive) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Save Archive");
+            chooser.setSelectedFile(new File("updated_photos.zip"));
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                File archiveFile = chooser.getSelectedFile();
+                String name = archiveFile.getName().toLowerCase(Locale.ROOT);
+                if (!name.endsWith(".zip") && !name.endsWith(".tar")) {
+                    archiveFile = new File(archiveFile.getParentFile(), archiveFile.getName() + ".zip");
+                }
+                if (archiveFile.exists() && JOptionPane.showConfirmDialog(this,
+                        archiveFile.getName() + " already exists. Do you want to replace it?",
+                        "Replace Archive",
+                        JOptionPane.YES_NO_OPTION,
+                        JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+                    return;
+                }
+                copyPhotosToArchive(archiveFile);
             }
         } else {
             // Handle "Copy to Folder" option
@@ -385,99 +698,66 @@ public class MainWindow extends JFrame {
         }
     }
 
-    private void updateOriginalPhotos() {
-        int successCount = 0;
-        int errorCount = 0;
-        StringBuilder errorMessages = new StringBuilder();
-        SimpleDateFormat exifDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+    /**
+     * Offers to resume an update of original photos that was interrupted.
+     * Returns true if the user resumed it or cancelled.
+     */
+    private boolean offerResume() {
+        BatchJournal journal;
+        try {
+            journal = BatchJournal.resume(BatchJournal.defaultPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (journal == null) {
+            return false;
+        }
 
-        for (File file : selectedFiles) {
-            try {
-                // Check if file exists and is writable
-                if (!file.exists()) {
-                    throw new IOException("File does not exist: " + file.getName());
-                }
-                if (!file.canWrite()) {
-                    throw new IOException("Cannot write to file: " + file.getName());
-                }
+        int result = JOptionPane.showConfirmDialog(this,
+            String.format("An earlier update of %d photos was interrupted after %d were finished.\n" +
+                "Would you like to resume it?\n\n" +
+                "Choose No to discard it and continue with a new update.",
+                journal.getPlannedCount(), journal.getDoneCount()),
+            "Resume Interrupted Update",
+            JOptionPane.YES_NO_CANCEL_OPTION,
+            JOptionPane.QUESTION_MESSAGE);
 
-                // Get the original date and calculate new date
-                Metadata metadata = ImageMetadataReader.readMetadata(file);
-                ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-                
-                if (directory != null) {
-                    Date originalDate = directory.getDateOriginal();
-                    if (originalDate != null) {
-                        // Calculate new date by adding the time difference
-                        Date newDate = new Date(originalDate.getTime() + this.timeToAdd);
-
-                        // Read the image metadata
-                        final ImageMetadata imageMetadata = Imaging.getMetadata(file);
-                        final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-                        final TiffOutputSet outputSet = jpegMetadata != null
-                            ? jpegMetadata.getExif().getOutputSet()
-                            : new TiffOutputSet();
-
-                        // Update EXIF date fields
-                        final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-                        exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-                        exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, exifDateFormat.format(newDate));
-
-                        // Create a temporary file for the update
-                        File tempFile = File.createTempFile("temp_", "_" + file.getName());
-                        
-                        // Write the updated metadata to the temporary file
-                        try (FileOutputStream fos = new FileOutputStream(tempFile);
-                             OutputStream os = new BufferedOutputStream(fos)) {
-                            new ExifRewriter().updateExifMetadataLossless(file, os, outputSet);
-                        }
-
-                        // Replace the original file with the temporary file
-                        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        successCount++;
-                    } else {
-                        throw new IOException("No original date found in metadata");
-                    }
-                } else {
-                    throw new IOException("No EXIF metadata found");
-                }
-            } catch (Exception e) {
-                errorCount++;
-                errorMessages.append(file.getName())
-                           .append(": ")
-                           .append(e.getMessage())
-                           .append("\n");
-                e.printStackTrace();
-            }
+        if (result == JOptionPane.YES_OPTION) {
+            StageTimings timings = new StageTimings();
+            ResultLog log = openResultLog("update");
+            PhotoVerifier verifier = createVerifier(timings, log);
+            PhotoWriter writer = new PhotoWriter(journal.getTimeToAdd(), timings, verifier, journal.getDateTags(),
+                journal.getRerunMode());
+            startUpdate(new UpdateWorker(journal.getRemainingFiles(),
+                BatchWriter.updateOriginals(metadataCache, writer, journal.isPatchInPlace(), journal),
+                writer, verifier, log, false, journal, null));
+            return true;
         }
 
-        // Show results
-        if (errorCount > 0) {
-            String message = String.format("Process completed with some errors.\n" +
-                "Successfully updated: %d\n" +
-                "Errors: %d\n\n" +
-                "Error details:\n%s",
-                successCount, errorCount, errorMessages.toString());
-            JOptionPane.showMessageDialog(this,
-                message,
-                "Update Complete with Errors",
-                JOptionPane.WARNING_MESSAGE);
-        } else {
-            String message = String.format("All files updated successfully.\nTotal files updated: %d",
-                successCount);
-            JOptionPane.showMessageDialog(this,
-                message,
-                "Update Complete",
-                JOptionPane.INFORMATION_MESSAGE);
+        try {
+            if (result == JOptionPane.NO_OPTION) {
+                journal.finish();
+            } else {
+                journal.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        return result != JOptionPane.NO_OPTION;
     }
 
-    private void copyPhotosToFolder(File destinationDir) {
-        int successCount = 0;
-        int errorCount = 0;
-        StringBuilder errorMessages = new StringBuilder();
-        SimpleDateFormat exifDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+    private void updateOriginalPhotos(boolean patchInPlace) {
+        StageTimings timings = new StageTimings();
+        ResultLog log = openResultLog("update");
+        PhotoVerifier verifier = createVerifier(timings, log);
+        PhotoWriter writer = new PhotoWriter(this.timeToAdd, timings, verifier, getSelectedDateTags(),
+            getRerunMode());
+        startUpdate(new UpdateWorker(Arrays.asList(selectedFiles), null, writer, verifier, log, false, null, null)
+            .planningJournal(patchInPlace));
+    }
 
+    private void copyPhotosToFolder(File destinationDir) {
         // Create destination directory if it doesn't exist
         if (!destinationDir.exists()) {
             if (!destinationDir.mkdirs()) {
@@ -489,88 +769,291 @@ public class MainWindow extends JFrame {
             }
         }
 
-        // Copy and process each file
-        for (File sourceFile : selectedFiles) {
-            try {
-                // Create copy of the file
-                File destFile = new File(destinationDir, sourceFile.getName());
-                
-                // Check if source file exists and is readable
-                if (!sourceFile.exists()) {
-                    throw new IOException("Source file does not exist: " + sourceFile.getName());
-                }
-                if (!sourceFile.canRead()) {
-                    throw new IOException("Cannot read source file: " + sourceFile.getName());
-                }
+        StageTimings timings = new StageTimings();
+        ResultLog log = openResultLog("copy");
+        PhotoVerifier verifier = createVerifier(timings, log);
+        PhotoWriter writer = new PhotoWriter(this.timeToAdd, timings, verifier, getSelectedDateTags(),
+            getRerunMode());
+        startUpdate(new UpdateWorker(Arrays.asList(selectedFiles),
+            BatchWriter.copyToFolder(metadataCache, writer, destinationDir), writer, verifier, log, true, null,
+            null));
+    }
 
-                // Get the original date and calculate new date
-                Metadata metadata = ImageMetadataReader.readMetadata(sourceFile);
-                ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-                
-                if (directory != null) {
-                    Date originalDate = directory.getDateOriginal();
-                    if (originalDate != null) {
-                        // Calculate new date by adding the time difference
-                        Date newDate = new Date(originalDate.getTime() + this.timeToAdd);
-
-                        // Read the image metadata
-                        final ImageMetadata imageMetadata = Imaging.getMetadata(sourceFile);
-                        final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-                        final TiffOutputSet outputSet = jpegMetadata != null
-                            ? jpegMetadata.getExif().getOutputSet()
-                            : new TiffOutputSet();
-
-                        // Update EXIF date fields
-                        final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-                        exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-                        exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, exifDateFormat.format(newDate));
-                        
-                        // Write the metadata to the new file
-                        try (FileOutputStream fos = new FileOutputStream(destFile);
-                             OutputStream os = new BufferedOutputStream(fos)) {
-                            new ExifRewriter().updateExifMetadataLossless(sourceFile, os, outputSet);
-                        }
-                    } else {
-                        // If no date in metadata, just copy the file
-                        Files.copy(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
-                } else {
-                    // If no EXIF data, just copy the file
-                    Files.copy(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    private void copyPhotosToArchive(File archiveFile) {
+        StageTimings timings = new StageTimings();
+        int threadCount = (Integer) threadCountSpinner.getValue();
+        ArchiveWriter archive;
+        try {
+            archive = new ArchiveWriter(archiveFile, ArchiveWriter.Format.forName(archiveFile.getName()),
+                threadCount * 2, timings);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                "Could not create archive: " + archiveFile.getAbsolutePath(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        ResultLog log = openResultLog("copy");
+        PhotoWriter writer = new PhotoWriter(this.timeToAdd, timings, null, getSelectedDateTags(),
+            getRerunMode());
+        startUpdate(new UpdateWorker(Arrays.asList(selectedFiles),
+            BatchWriter.copyToArchive(metadataCache, writer, archive), writer, null, log, true, null, archive));
+    }
+
+    private Set<DateTag> getSelectedDateTags() {
+        Set<DateTag> tags = EnumSet.of(DateTag.ORIGINAL);
+        dateTagBoxes.forEach((tag, box) -> {
+            if (box.isSelected()) {
+                tags.add(tag);
+            }
+        });
+        return tags;
+    }
+
+    private RerunMode getRerunMode() {
+        return (RerunMode) rerunModeBox.getSelectedItem();
+    }
+
+    // Starts the log every photo's outcome is written to, or returns null if it can't be created
+    private ResultLog openResultLog(String run) {
+        try {
+            return new ResultLog(ResultLog.defaultDirectory(), run, ResultReport.Format.JSONL,
+                ResultLog.DEFAULT_MAX_FILE_BYTES, ResultLog.DEFAULT_MAX_FILES);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Returns null unless "Verify" is ticked; photos that fail are flagged in the table as they are found
+    private PhotoVerifier createVerifier(StageTimings timings, ResultLog log) {
+        if (!verifyBox.isSelected()) {
+            return null;
+        }
+        return new PhotoVerifier(PhotoVerifier.defaultThreadCount(), timings, (file, problem) -> {
+            if (problem != null) {
+                if (log != null) {
+                    log.record(file, "mismatch", ScannedPhoto.NO_DATE, ScannedPhoto.NO_DATE, problem);
                 }
-                
-                successCount++;
-            } catch (Exception e) {
-                errorCount++;
-                errorMessages.append(sourceFile.getName())
-                           .append(": ")
-                           .append(e.getMessage())
-                           .append("\n");
-                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> tableModel.markVerificationFailed(file, problem));
             }
+        });
+    }
+
+    private void startUpdate(UpdateWorker worker) {
+        updateWorker = worker;
+        selectButton.setEnabled(false);
+        updateButton.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setString("Updating...");
+        rateLabel.setText(" ");
+        progressPanel.setVisible(true);
+        updateWorker.execute();
+    }
+
+    private void showUpdateResults(BatchResult result, PhotoWriter writer, PhotoVerifier verifier, ResultLog log,
+            boolean copy, int fileCount, int skippedCount) {
+        int successCount = result.getSuccessCount();
+        int errorCount = result.getErrorCount();
+        StageSummaryPanel timings = new StageSummaryPanel(writer.getTimings(), copy ? "copy" : "update");
+        String cancelled = result.isCancelled()
+            ? String.format("Cancelled after %d of %d files.\n", result.getProcessedCount(), fileCount)
+            : "";
+        String skipped = skippedCount == 0 ? "" : String.format(copy
+            ? "%d photos were shifted before and copied unchanged.\n"
+            : "%d photos were shifted before and left unchanged.\n", skippedCount);
+        String verified = "";
+        int mismatchCount = 0;
+        if (verifier != null) {
+            // The photos themselves are flagged in the table, next to their dates
+            mismatchCount = verifier.getMismatchCount();
+            verified = mismatchCount > 0
+                ? String.format("%d of %d written photos failed verification and are marked in the table.\n",
+                    mismatchCount, verifier.getVerifiedCount())
+                : String.format("All %d written photos were verified.\n", verifier.getVerifiedCount());
         }
 
         // Show results
-        if (errorCount > 0) {
-            String message = String.format("Process completed with some errors.\n" +
-                "Successfully copied and updated: %d\n" +
+        if (errorCount > 0 || mismatchCount > 0) {
+            // Only the latest few are listed; the log has them all
+            List<String> recent = log != null ? log.getRecentProblems() : result.getErrorMessages();
+            StringBuilder errorMessages = new StringBuilder();
+            for (String error : recent.subList(Math.max(0, recent.size() - ResultLog.RECENT_PROBLEMS), recent.size())) {
+                errorMessages.append(error).append("\n");
+            }
+            String message = String.format("%sProcess completed with some errors.\n" +
+                "%s: %d\n" +
                 "Errors: %d\n\n" +
-                "Error details:\n%s",
-                successCount, errorCount, errorMessages.toString());
+                "%s:\n%s",
+                cancelled + skipped + verified, copy ? "Successfully copied and updated" : "Successfully updated",
+                successCount, errorCount,
+                errorCount + mismatchCount > recent.size() ? "Latest errors" : "Error details",
+                errorMessages.toString());
+
+            JButton viewButton = new JButton("View All Errors...");
+            viewButton.setEnabled(log != null);
+            viewButton.addActionListener(e -> JOptionPane.showMessageDialog(viewButton,
+                new ProblemViewerPanel(log),
+                copy ? "Copy Errors" : "Update Errors",
+                JOptionPane.PLAIN_MESSAGE));
             JOptionPane.showMessageDialog(this,
-                message,
-                "Copy Complete with Errors",
+                new Object[] {message, viewButton, timings},
+                copy ? "Copy Complete with Errors" : "Update Complete with Errors",
                 JOptionPane.WARNING_MESSAGE);
         } else {
-            String message = String.format("All files copied and metadata updated successfully.\nTotal files processed: %d",
-                successCount);
+            String message = copy
+                ? String.format("%sAll files copied and metadata updated successfully.\nTotal files processed: %d",
+                    cancelled + skipped + verified, successCount)
+                : String.format("%sAll files updated successfully.\nTotal files updated: %d",
+                    cancelled + skipped + verified, successCount);
             JOptionPane.showMessageDialog(this,
-                message,
-                "Copy Complete",
+                new Object[] {message, timings},
+                copy ? "Copy Complete" : "Update Complete",
                 JOptionPane.INFORMATION_MESSAGE);
         }
     }
 
+    /**
+     * Runs a batch write in the background and reports progress and
+     * throughput until it finishes or is cancelled.
+     */
+    private class UpdateWorker extends SwingWorker<BatchResult, Void> {
+        private final List<File> files;
+        private BatchWriter.Operation operation;
+        private final PhotoWriter writer;
+        private final boolean copy;
+        private final PhotoVerifier verifier;
+        private final ResultLog log;
+        private BatchJournal journal;
+        private final ArchiveWriter archive;
+        private boolean planJournal;
+        private boolean patchInPlace;
+        private final BatchWriter batchWriter;
+        private final AtomicInteger finishedCount = new AtomicInteger();
+        private final AtomicInteger skippedCount = new AtomicInteger();
+        private final long startTime = System.nanoTime();
+
+        UpdateWorker(List<File> files, BatchWriter.Operation operation, PhotoWriter writer, PhotoVerifier verifier,
+                ResultLog log, boolean copy, BatchJournal journal, ArchiveWriter archive) {
+            this.files = files;
+            this.operation = operation;
+            this.writer = writer;
+            this.copy = copy;
+            this.verifier = verifier;
+            this.log = log;
+            this.journal = journal;
+            this.archive = archive;
+            this.batchWriter = new BatchWriter((Integer) threadCountSpinner.getValue());
+        }
+
+        /**
+         * Makes this an update of originals that first plans every new date in
+         * a journal, then writes through it. Planning reads and syncs the whole
+         * selection, so it is done in doInBackground() rather than beforehand.
+         */
+        UpdateWorker planningJournal(boolean patchInPlace) {
+            this.planJournal = true;
+            this.patchInPlace = patchInPlace;
+            return this;
+        }
+
+        @Override
+        protected BatchResult doInBackground() throws Exception {
+            if (planJournal) {
+                SwingUtilities.invokeLater(() -> progressBar.setString("Planning..."));
+                try {
+                    Iterable<ScannedPhoto> photos = () -> files.stream().map(metadataCache::get).iterator();
+                    journal = BatchJournal.create(BatchJournal.defaultPath(), photos, writer, patchInPlace);
+                } catch (IOException e) {
+                    // Without a journal the update still runs, it just can't be resumed
+                    e.printStackTrace();
+                }
+                operation = BatchWriter.updateOriginals(metadataCache, writer, patchInPlace, journal);
+            }
+
+            String doneStatus = copy ? "copied" : "updated";
+            BatchResult result = batchWriter.run(files, operation, (file, photo, error) -> {
+                writer.getTimings().fileFinished();
+                boolean skipped = error == null && writer.skips(photo);
+                if (skipped) {
+                    skippedCount.incrementAndGet();
+                }
+                if (log != null) {
+                    long originalTime = photo != null ? photo.getOriginalTime() : ScannedPhoto.NO_DATE;
+                    long newTime = originalTime != ScannedPhoto.NO_DATE
+                        ? originalTime + writer.shiftFor(photo)
+                        : ScannedPhoto.NO_DATE;
+                    String status = error != null ? "error" : skipped && !copy ? "skipped" : doneStatus;
+                    log.record(file, status, originalTime, newTime,
+                        error != null ? error.getMessage() : skipped ? "Already shifted" : null);
+                }
+                int done = finishedCount.incrementAndGet();
+                setProgress(files.isEmpty() ? 100 : (int) (done * 100L / files.size()));
+                publish();
+            });
+            if (verifier != null) {
+                // Most photos were checked while later ones were being written
+                verifier.finish();
+            }
+            try {
+                if (archive != null) {
+                    // Waits for the photos still queued for the archive, even when cancelled
+                    archive.close();
+                }
+            } finally {
+                writer.getTimings().finish();
+                if (log != null) {
+                    log.close();
+                }
+            }
+
+            // A cancelled batch keeps its journal so it can be resumed later
+            if (journal != null) {
+                if (result.isCancelled()) {
+                    journal.close();
+                } else {
+                    journal.finish();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected void process(List<Void> chunks) {
+            int done = finishedCount.get();
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            progressBar.setValue(getProgress());
+            progressBar.setString(String.format("%d / %d", done, files.size()));
+            rateLabel.setText(String.format("%.1f files/sec", seconds > 0 ? done / seconds : 0));
+        }
+
+        @Override
+        protected void done() {
+            progressPanel.setVisible(false);
+            selectButton.setEnabled(true);
+            updateButton.setEnabled(true);
+            flushMetadataIndex();
+            updateCacheStatsLabel();
+            setLastRun(writer.getTimings(), copy ? "copy" : "update");
+            try {
+                showUpdateResults(get(), writer, verifier, log, copy, files.size(), skippedCount.get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(MainWindow.this,
+                    "The update stopped unexpectedly: " + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        void stop() {
+            // Files already being written are finished so none are left half written
+            batchWriter.cancel();
+        }
+    }
+
     public static void main(String[] args) {
         // Create and show the window on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
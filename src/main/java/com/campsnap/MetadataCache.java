@@ -0,0 +1,119 @@
+package com.campsnap;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the scanned original date of each photo so it is only read from
+ * disk again when the file changes. Entries are keyed by absolute path and
+ * checked against the file's size and last-modified time.
+ */
+public class MetadataCache {
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final ScannedPhoto photo;
+
+        Entry(long size, long lastModified, ScannedPhoto photo) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.photo = photo;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private volatile MetadataIndex index;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MetadataCache() {
+        this(Integer.MAX_VALUE);
+    }
+
+    // Once maxEntries photos are cached, further photos are read but not remembered
+    public MetadataCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public ScannedPhoto get(File file) {
+        return get(file, StageTimings.NONE);
+    }
+
+    // As get(File), recording how long any read from disk took in timings
+    public ScannedPhoto get(File file, StageTimings timings) {
+        return get(file, timings, null);
+    }
+
+    // As get(File, StageTimings), parsing the prefetched header if the file has to be read
+    public ScannedPhoto get(File file, StageTimings timings, HeaderPrefetcher.Prefetch prefetch) {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            return entry.photo;
+        }
+
+        misses.incrementAndGet();
+        return read(file, key, size, lastModified, timings, prefetch);
+    }
+
+    // Whether a photo has been cached, without checking that the file is unchanged
+    public boolean contains(File file) {
+        return entries.containsKey(file.getAbsolutePath());
+    }
+
+    // Rereads a file that was just written so the cache and index match its new contents
+    public void refresh(File file) {
+        read(file, file.getAbsolutePath(), file.length(), file.lastModified(), StageTimings.NONE, null);
+    }
+
+    private ScannedPhoto read(File file, String key, long size, long lastModified, StageTimings timings,
+            HeaderPrefetcher.Prefetch prefetch) {
+        ScannedPhoto photo = PhotoScanner.readPhoto(file, prefetch, timings);
+
+        // Read errors may be temporary (e.g. a card being remounted), so only cache successes
+        if (photo.isError()) {
+            entries.remove(key);
+        } else if (entries.size() < maxEntries || entries.containsKey(key)) {
+            entries.put(key, new Entry(size, lastModified, photo));
+            MetadataIndex currentIndex = index;
+            if (currentIndex != null) {
+                currentIndex.append(key, size, lastModified, photo);
+            }
+        }
+        return photo;
+    }
+
+    // Adds an entry loaded from the on-disk index without reading the file
+    void restore(File file, long size, long lastModified, ScannedPhoto photo) {
+        if (entries.size() < maxEntries) {
+            entries.put(file.getAbsolutePath(), new Entry(size, lastModified, photo));
+        }
+    }
+
+    // Records every photo read from now on in the given index
+    void setIndex(MetadataIndex index) {
+        this.index = index;
+    }
+
+    public MetadataIndex getIndex() {
+        return index;
+    }
+
+    public void invalidate(File file) {
+        entries.remove(file.getAbsolutePath());
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
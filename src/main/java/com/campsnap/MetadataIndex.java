@@ -0,0 +1,199 @@
+package com.campsnap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk copy of the metadata cache, so folders that were scanned before
+ * open without reading their photos again.
+ *
+ * The index is an append-only file of records holding path, size, modified
+ * time, original date, the offset of the date value and the ShiftRecord of
+ * the photo, if it has one. Later records for a
+ * path replace earlier ones. On open the file is memory-mapped and replayed
+ * into the cache, and rewritten without the replaced records when they make
+ * up most of it.
+ */
+public class MetadataIndex implements Closeable {
+    private static final int MAGIC = 0x43534958; // "CSIX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private DataOutputStream out;
+
+    private static class Record {
+        final long size;
+        final long lastModified;
+        final long originalTime;
+        final long dateOffset;
+        // ScannedPhoto.NO_DATE when the photo has no ShiftRecord
+        final long recordOriginalTime;
+        final long recordShift;
+        final long recordOffset;
+
+        Record(long size, long lastModified, long originalTime, long dateOffset, long recordOriginalTime,
+                long recordShift, long recordOffset) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.originalTime = originalTime;
+            this.dateOffset = dateOffset;
+            this.recordOriginalTime = recordOriginalTime;
+            this.recordShift = recordShift;
+            this.recordOffset = recordOffset;
+        }
+
+        ShiftRecord shiftRecord() {
+            return recordOriginalTime != ScannedPhoto.NO_DATE
+                ? new ShiftRecord(recordOriginalTime, recordShift, recordOffset)
+                : null;
+        }
+    }
+
+    private MetadataIndex(Path path) {
+        this.path = path;
+    }
+
+    // The index file under the user's configuration directory
+    public static Path defaultPath() {
+        return AppDirectories.configDirectory().resolve("metadata-index.bin");
+    }
+
+    /**
+     * Loads the index at path into the cache and attaches it, so photos the
+     * cache reads from now on are added to the index.
+     */
+    public static MetadataIndex open(Path path, MetadataCache cache) throws IOException {
+        MetadataIndex index = new MetadataIndex(path);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+
+        Map<String, Record> records = new LinkedHashMap<>();
+        int recordCount = index.load(records);
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            File file = new File(entry.getKey());
+            cache.restore(file, record.size, record.lastModified,
+                new ScannedPhoto(file, record.originalTime, record.dateOffset, record.shiftRecord()));
+        }
+
+        // Rewrite the file once replaced records (or a damaged tail) make up most of it
+        if (recordCount < 0 || recordCount > records.size() * 2 + 1000) {
+            index.compact(records);
+        }
+
+        // A FileOutputStream, unlike a channel, stays open when a cancelled scan interrupts a thread writing to it
+        index.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile(), true)));
+        if (Files.size(path) == 0) {
+            index.writeHeader(index.out);
+        }
+        cache.setIndex(index);
+        return index;
+    }
+
+    /**
+     * Reads every record into records and returns how many there were, or -1
+     * if the file was damaged and has to be rewritten.
+     */
+    private int load(Map<String, Record> records) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return Files.exists(path) && Files.size(path) > 0 ? -1 : 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return -1;
+            }
+
+            int count = 0;
+            while (buffer.hasRemaining()) {
+                try {
+                    byte[] pathBytes = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(pathBytes);
+                    Record record = new Record(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                        buffer.getLong(), buffer.getLong(), buffer.getLong());
+                    records.put(new String(pathBytes, StandardCharsets.UTF_8), record);
+                    count++;
+                } catch (BufferUnderflowException e) {
+                    // The last record was only partly written
+                    return -1;
+                }
+            }
+            return count;
+        }
+    }
+
+    private void compact(Map<String, Record> records) throws IOException {
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tempFile)))) {
+            writeHeader(compacted);
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                writeRecord(compacted, entry.getKey(), record.size, record.lastModified,
+                    record.originalTime, record.dateOffset, record.shiftRecord());
+            }
+        }
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    synchronized void append(String filePath, long size, long lastModified, ScannedPhoto photo) {
+        try {
+            writeRecord(out, filePath, size, lastModified, photo.getOriginalTime(), photo.getDateOffset(),
+                photo.getShiftRecord());
+        } catch (IOException e) {
+            // The index is only an optimization; a missing record just means a rescan
+            e.printStackTrace();
+        }
+    }
+
+    // Writes buffered records to disk; called after each scan or batch
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeHeader(DataOutputStream stream) throws IOException {
+        stream.writeInt(MAGIC);
+        stream.writeInt(VERSION);
+    }
+
+    private static void writeRecord(DataOutputStream stream, String filePath, long size, long lastModified,
+            long originalTime, long dateOffset, ShiftRecord shiftRecord) throws IOException {
+        byte[] pathBytes = filePath.getBytes(StandardCharsets.UTF_8);
+        if (pathBytes.length > 0xFFFF) {
+            return;
+        }
+        stream.writeShort(pathBytes.length);
+        stream.write(pathBytes);
+        stream.writeLong(size);
+        stream.writeLong(lastModified);
+        stream.writeLong(originalTime);
+        stream.writeLong(dateOffset);
+        stream.writeLong(shiftRecord != null ? shiftRecord.getOriginalTime() : ScannedPhoto.NO_DATE);
+        stream.writeLong(shiftRecord != null ? shiftRecord.getAppliedShift() : 0);
+        stream.writeLong(shiftRecord != null ? shiftRecord.getValueOffset() : -1);
+    }
+}
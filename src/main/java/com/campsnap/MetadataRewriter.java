@@ -0,0 +1,182 @@
+package com.campsnap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffDirectory;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImagingParameters;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoAscii;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossless;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * Rebuilds EXIF metadata with a new date using commons-imaging.
+ *
+ * PhotoWriter only comes here for photos it can't patch in place, so the
+ * library isn't loaded while the window opens or photos are scanned, only
+ * when the first photo has to be rewritten.
+ */
+final class MetadataRewriter {
+    private static final TagInfoAscii SHIFT_RECORD = new TagInfoAscii("CampSnapShiftRecord", ShiftRecord.TAG,
+        ShiftRecord.LENGTH + 1, TiffDirectoryType.EXIF_DIRECTORY_EXIF_IFD);
+
+    private MetadataRewriter() {
+    }
+
+    /**
+     * Returns the TIFF block of an EXIF segment rebuilt with newValue as its
+     * DateTimeOriginal and the other dates in tags shifted by timeToAdd,
+     * keeping any thumbnail, and with shiftRecord stored unless it is null.
+     * Returns null if the block is not TIFF metadata.
+     */
+    static byte[] rebuildTiff(File file, byte[] exifBytes, String newValue, long timeToAdd, Set<DateTag> tags,
+            ShiftRecord shiftRecord, StageTimings timings)
+            throws IOException, ImageReadException, ImageWriteException {
+        // Parse only the TIFF block inside APP1, keeping thumbnails as the JPEG parser does
+        StageTimings.Span span = timings.start(StageTimings.Stage.PARSE);
+        TiffImagingParameters params = new TiffImagingParameters();
+        params.setReadThumbnails(true);
+        ImageMetadata exif = new TiffImageParser().getMetadata(exifBytes, params);
+        timings.end(span, file, exifBytes.length);
+        if (!(exif instanceof TiffImageMetadata)) {
+            return null;
+        }
+
+        span = timings.start(StageTimings.Stage.BUILD);
+        TiffOutputSet outputSet = ((TiffImageMetadata) exif).getOutputSet();
+        shiftDates((TiffImageMetadata) exif, outputSet, newValue, timeToAdd, tags, shiftRecord);
+        timings.end(span, file);
+
+        span = timings.start(StageTimings.Stage.REWRITE);
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream(exifBytes.length + 64);
+        new TiffImageWriterLossless(outputSet.byteOrder, exifBytes).write(tiff, outputSet);
+        timings.end(span, file, tiff.size());
+        return tiff.toByteArray();
+    }
+
+    // Returns the whole photo with its dates changed as rebuildTiff() does, adding EXIF if it has none
+    static byte[] rewrite(File file, byte[] source, String newValue, long timeToAdd, Set<DateTag> tags,
+            ShiftRecord shiftRecord, StageTimings timings)
+            throws IOException, ImageReadException, ImageWriteException {
+        // Read the image metadata
+        StageTimings.Span span = timings.start(StageTimings.Stage.PARSE);
+        final ImageMetadata imageMetadata = Imaging.getMetadata(source);
+        timings.end(span, file, source.length);
+
+        span = timings.start(StageTimings.Stage.BUILD);
+        final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
+        final TiffOutputSet outputSet = jpegMetadata != null && jpegMetadata.getExif() != null
+            ? jpegMetadata.getExif().getOutputSet()
+            : new TiffOutputSet();
+
+        shiftDates(jpegMetadata != null ? jpegMetadata.getExif() : null, outputSet, newValue, timeToAdd, tags,
+            shiftRecord);
+        timings.end(span, file);
+
+        span = timings.start(StageTimings.Stage.REWRITE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(source.length + 1024);
+        new ExifRewriter().updateExifMetadataLossless(source, output, outputSet);
+        timings.end(span, file, output.size());
+        return output.toByteArray();
+    }
+
+    /**
+     * Sets DateTimeOriginal to newValue and shifts the other dates in tags
+     * that exif holds, reading their old values from exif, which is null for
+     * a photo without EXIF. A shiftRecord replaces any earlier one.
+     */
+    private static void shiftDates(TiffImageMetadata exif, TiffOutputSet outputSet, String newValue,
+            long timeToAdd, Set<DateTag> tags, ShiftRecord shiftRecord)
+            throws ImageReadException, ImageWriteException {
+        // Update EXIF date fields
+        final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+        exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, newValue);
+        if (shiftRecord != null) {
+            exifDirectory.removeField(ShiftRecord.TAG);
+            exifDirectory.add(SHIFT_RECORD, shiftRecord.format());
+        }
+        if (exif == null) {
+            return;
+        }
+
+        if (tags.contains(DateTag.MODIFIED)) {
+            shiftDate(exif.findDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_ROOT), outputSet.getRootDirectory(),
+                TiffTagConstants.TIFF_TAG_DATE_TIME, timeToAdd);
+        }
+        if (tags.contains(DateTag.DIGITIZED)) {
+            shiftDate(exif.findDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_EXIF), exifDirectory,
+                ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED, timeToAdd);
+        }
+        if (tags.contains(DateTag.GPS)) {
+            shiftGps(exif.findDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_GPS), outputSet.getGPSDirectory(),
+                timeToAdd);
+        }
+    }
+
+    private static void shiftDate(TiffDirectory source, TiffOutputDirectory directory, TagInfoAscii tag,
+            long timeToAdd) throws ImageReadException, ImageWriteException {
+        TiffField field = source != null && directory != null ? source.findField(tag) : null;
+        if (field == null) {
+            return;
+        }
+        String shifted = DateShift.shiftDate(field.getStringValue(), timeToAdd);
+        if (shifted != null) {
+            directory.removeField(tag);
+            directory.add(tag, shifted);
+        }
+    }
+
+    private static void shiftGps(TiffDirectory source, TiffOutputDirectory directory, long timeToAdd)
+            throws ImageReadException, ImageWriteException {
+        TiffField dateField = source != null && directory != null
+            ? source.findField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP)
+            : null;
+        TiffField timeField = source != null && directory != null
+            ? source.findField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP)
+            : null;
+        if (dateField == null || timeField == null || !(timeField.getValue() instanceof RationalNumber[])) {
+            return;
+        }
+        RationalNumber[] time = (RationalNumber[]) timeField.getValue();
+        if (time.length != 3) {
+            return;
+        }
+        long[] numerators = new long[3];
+        long[] denominators = new long[3];
+        for (int i = 0; i < 3; i++) {
+            numerators[i] = time[i].numerator;
+            denominators[i] = time[i].divisor;
+        }
+        String dateStamp = DateShift.shiftGps(dateField.getStringValue(), numerators, denominators, timeToAdd);
+        if (dateStamp == null) {
+            return;
+        }
+        RationalNumber[] shifted = new RationalNumber[3];
+        for (int i = 0; i < 3; i++) {
+            shifted[i] = new RationalNumber((int) numerators[i], (int) denominators[i], true);
+        }
+        directory.removeField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP);
+        directory.add(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP, dateStamp);
+        directory.removeField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP);
+        directory.add(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP, shifted);
+    }
+}
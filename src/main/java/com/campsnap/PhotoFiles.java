@@ -0,0 +1,142 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Finds JPEG files from command line inputs, which may be files, directories
+ * or glob patterns. Directories are walked lazily so large trees never have
+ * to be held in memory at once.
+ *
+ * Photos are returned one directory at a time in name order. Camera file
+ * names count up as photos are taken, so on a card this is close to the
+ * order the files were written, and each directory is read in one go rather
+ * than revisited between its subdirectories.
+ */
+public final class PhotoFiles {
+    private PhotoFiles() {
+    }
+
+    public static boolean isJpeg(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /**
+     * Claims name in taken, or the first free one of "name (2).jpg",
+     * "name (3).jpg" and so on when photos from different folders share it.
+     * Names are compared ignoring case, as many file systems do. Safe to call
+     * from several threads if taken is a concurrent set.
+     */
+    public static String uniqueName(Set<String> taken, String name) {
+        String unique = name;
+        int dot = name.lastIndexOf('.');
+        for (int i = 2; !taken.add(unique.toLowerCase(Locale.ROOT)); i++) {
+            unique = dot > 0
+                ? name.substring(0, dot) + " (" + i + ")" + name.substring(dot)
+                : name + " (" + i + ")";
+        }
+        return unique;
+    }
+
+    // A copy of files sorted by directory, then by name within each directory
+    public static File[] inLocalityOrder(File[] files) {
+        File[] sorted = files.clone();
+        Arrays.sort(sorted, Comparator.comparing((File file) -> String.valueOf(file.getParent()))
+            .thenComparing(File::getName));
+        return sorted;
+    }
+
+    /**
+     * Returns a lazy stream of the photos named by the inputs. The stream holds
+     * open directory handles while it is consumed and must be closed.
+     */
+    public static Stream<File> find(List<String> inputs, boolean recursive) {
+        return inputs.stream().flatMap(input -> {
+            try {
+                return find(input, recursive);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static Stream<File> find(String input, boolean recursive) throws IOException {
+        if (isGlob(input)) {
+            return findGlob(input);
+        }
+
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) {
+            return byDirectory(path, recursive ? Integer.MAX_VALUE : 0, p -> true);
+        }
+        if (!Files.exists(path)) {
+            throw new IOException("No such file or directory: " + input);
+        }
+        // Files named explicitly are taken as they are
+        return Stream.of(path.toFile());
+    }
+
+    private static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0
+            || input.indexOf('[') >= 0 || input.indexOf('{') >= 0;
+    }
+
+    // Walks from the part of the pattern before the first wildcard
+    private static Stream<File> findGlob(String pattern) throws IOException {
+        String normalized = pattern.replace(File.separatorChar, '/');
+        int wildcard = firstWildcard(normalized);
+        int lastSeparator = normalized.lastIndexOf('/', wildcard);
+
+        Path base = lastSeparator < 0 ? Paths.get("") : Paths.get(normalized.substring(0, lastSeparator + 1));
+        String relativePattern = normalized.substring(lastSeparator + 1);
+        int depth = relativePattern.contains("**")
+            ? Integer.MAX_VALUE
+            : relativePattern.split("/").length;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relativePattern);
+
+        Path start = base.toString().isEmpty() ? Paths.get(".") : base;
+        return byDirectory(start, depth - 1, p -> matcher.matches(start.relativize(p)));
+    }
+
+    // Photos in root and in its subdirectories up to depth, listing each directory sorted
+    private static Stream<File> byDirectory(Path root, int depth, Predicate<Path> filter) throws IOException {
+        return Files.walk(root, depth)
+            .filter(p -> Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+            .flatMap(directory -> {
+                try {
+                    return Files.list(directory)
+                        .filter(p -> Files.isRegularFile(p) && isJpeg(p) && filter.test(p))
+                        .sorted()
+                        .map(Path::toFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    private static int firstWildcard(String pattern) {
+        int first = pattern.length();
+        for (char c : new char[] {'*', '?', '[', '{'}) {
+            int index = pattern.indexOf(c);
+            if (index >= 0 && index < first) {
+                first = index;
+            }
+        }
+        return first;
+    }
+}
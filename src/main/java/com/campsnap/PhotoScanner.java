@@ -0,0 +1,149 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the EXIF original date of many photos in parallel.
+ *
+ * Work is handed to a fixed pool of threads with a bounded number of files
+ * in flight, so the input can be a lazily produced sequence of any length.
+ * Headers are read ahead of the parsing threads in the order files are
+ * given, with as many reads outstanding as the storage handles well.
+ */
+public class PhotoScanner {
+    public interface Listener {
+        // Called from the scanner's worker threads, once per file
+        void photoScanned(ScannedPhoto photo);
+    }
+
+    private final MetadataCache cache;
+    private final int threadCount;
+    private final StageTimings timings;
+    private final IoConcurrencyLimit readLimit;
+    private volatile boolean cancelled;
+
+    public PhotoScanner(MetadataCache cache) {
+        this(cache, defaultThreadCount());
+    }
+
+    public PhotoScanner(MetadataCache cache, int threadCount) {
+        this(cache, threadCount, new StageTimings());
+    }
+
+    public PhotoScanner(MetadataCache cache, int threadCount, StageTimings timings) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        }
+        this.cache = cache;
+        this.threadCount = threadCount;
+        this.timings = timings;
+        this.readLimit = new IoConcurrencyLimit(1, threadCount * 2, threadCount);
+    }
+
+    public static int defaultThreadCount() {
+        // Metadata reading is mostly I/O, so use a couple of threads even on small machines
+        return Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public StageTimings getTimings() {
+        return timings;
+    }
+
+    // How many header reads the scanner currently keeps outstanding
+    public int getReadConcurrency() {
+        return readLimit.getLimit();
+    }
+
+    /**
+     * Scans every file and blocks until all of them have been reported to the
+     * listener, or until the scan is cancelled or the calling thread is interrupted.
+     */
+    public void scan(Iterable<File> files, Listener listener) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "photo-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(threadCount * 2);
+        HeaderPrefetcher prefetcher = new HeaderPrefetcher(readLimit, threadCount * 2);
+
+        try {
+            for (File file : files) {
+                if (cancelled) {
+                    break;
+                }
+                inFlight.acquire();
+                // Photos the cache already has are most likely unchanged, so their headers are not read ahead
+                HeaderPrefetcher.Prefetch prefetch = cache.contains(file) ? null : prefetcher.start(file);
+                executor.execute(() -> {
+                    try {
+                        if (!cancelled) {
+                            ScannedPhoto photo = cache.get(file, timings, prefetch);
+                            timings.fileFinished();
+                            listener.photoScanned(photo);
+                        }
+                    } finally {
+                        if (prefetch != null) {
+                            prefetch.release();
+                        }
+                        inFlight.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            timings.finish();
+        } finally {
+            // Only has an effect when we got here through an interrupt
+            executor.shutdownNow();
+        }
+    }
+
+    public static ScannedPhoto readPhoto(File file) {
+        return readPhoto(file, StageTimings.NONE);
+    }
+
+    public static ScannedPhoto readPhoto(File file, StageTimings timings) {
+        return readPhoto(file, null, timings);
+    }
+
+    // Reads a photo whose header may already be on its way; READ then only measures the wait for it
+    static ScannedPhoto readPhoto(File file, HeaderPrefetcher.Prefetch prefetch, StageTimings timings) {
+        try {
+            // Try the header-only reader first; it only gives up on unusual layouts
+            StageTimings.Span span = timings.start(StageTimings.Stage.READ);
+            ByteBuffer prefix = prefetch != null ? prefetch.await() : ExifDateReader.readPrefix(file);
+            timings.end(span, file, prefix.limit());
+
+            span = timings.start(StageTimings.Stage.PARSE);
+            ExifDateReader.ExifDate exifDate = ExifDateReader.parse(prefix);
+            timings.end(span, file);
+            if (exifDate != null) {
+                return new ScannedPhoto(file, exifDate.getOriginalTime(), exifDate.getValueOffset(),
+                    exifDate.getShiftRecord());
+            }
+
+            span = timings.start(StageTimings.Stage.FALLBACK);
+            ScannedPhoto photo = FullMetadataReader.read(file);
+            timings.end(span, file, file.length());
+            return photo;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return ScannedPhoto.error(file);
+        }
+    }
+}
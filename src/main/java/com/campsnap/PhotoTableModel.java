@@ -0,0 +1,238 @@
+package com.campsnap;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.Icon;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Table model for the photo preview, backed by plain arrays.
+ *
+ * Dates are stored as epoch milliseconds and only turned into text by the
+ * renderer for rows that are on screen. The new date is derived from the
+ * shared time to add, so changing the offset is a single table event. For
+ * photos with a ShiftRecord it also depends on the rerun mode.
+ */
+public class PhotoTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"File Name", "Date Taken", "New Date", "Preview"};
+    private static final int NEW_DATE_COLUMN = 2;
+    public static final int PREVIEW_COLUMN = 3;
+
+    private static final byte DATED = 0;
+    private static final byte UNDATED = 1;
+    private static final byte ERROR = 2;
+
+    private File[] files = new File[0];
+    private long[] originalTimes = new long[0];
+    // The date before any recorded shift, and whether the photo has a ShiftRecord at all
+    private long[] unshiftedTimes = new long[0];
+    private boolean[] recorded = new boolean[0];
+    private byte[] states = new byte[0];
+    // Why a written photo failed verification, or null
+    private String[] problems = new String[0];
+    private int rowCount;
+    private long timeToAdd;
+    private boolean shiftKnown;
+    private RerunMode rerunMode = RerunMode.IGNORE;
+
+    // Sorts dates chronologically and puts status text such as "Unknown" after them
+    public static final Comparator<Object> DATE_ORDER = (a, b) -> {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        if (a instanceof Long) {
+            return -1;
+        }
+        if (b instanceof Long) {
+            return 1;
+        }
+        return a.toString().compareTo(b.toString());
+    };
+
+    /**
+     * Shows epoch millisecond values as dates and anything else as it is.
+     * Formatting happens on the Event Dispatch Thread, one visible cell at a time.
+     */
+    public static class DateCellRenderer extends DefaultTableCellRenderer {
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        @Override
+        protected void setValue(Object value) {
+            if (value instanceof Long) {
+                setText(dateFormat.format(new Date((Long) value)));
+            } else {
+                super.setValue(value);
+            }
+        }
+    }
+
+    /**
+     * Shows the embedded thumbnail of the photo in a cell, loading it in the
+     * background the first time the cell is painted.
+     */
+    public static class ThumbnailRenderer extends DefaultTableCellRenderer {
+        private final ThumbnailCache cache;
+
+        public ThumbnailRenderer(ThumbnailCache cache) {
+            this.cache = cache;
+            setHorizontalAlignment(CENTER);
+        }
+
+        @Override
+        protected void setValue(Object value) {
+            Icon icon = value instanceof File ? cache.get((File) value) : ThumbnailCache.NONE;
+            setIcon(icon == ThumbnailCache.NONE ? null : icon);
+            setText(icon == null ? "..." : "");
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            return files[row].getName();
+        }
+        if (column == PREVIEW_COLUMN) {
+            // The renderer turns the file into its thumbnail
+            return files[row];
+        }
+
+        byte state = states[row];
+        if (state == ERROR) {
+            return column == 1 ? "Error reading metadata" : "Error";
+        }
+        if (state == UNDATED) {
+            return "Unknown";
+        }
+        if (column == 1) {
+            return originalTimes[row];
+        }
+        if (problems[row] != null) {
+            return "Verification failed: " + problems[row];
+        }
+        if (recorded[row] && rerunMode == RerunMode.SKIP) {
+            return "Already shifted";
+        }
+        // In automatic mode the shift is only known once every photo has been read
+        if (!shiftKnown) {
+            return "Calculating...";
+        }
+        return (rerunMode == RerunMode.REBASE ? unshiftedTimes[row] : originalTimes[row]) + timeToAdd;
+    }
+
+    public File getFile(int row) {
+        return files[row];
+    }
+
+    public void clear() {
+        files = new File[0];
+        originalTimes = new long[0];
+        unshiftedTimes = new long[0];
+        recorded = new boolean[0];
+        states = new byte[0];
+        problems = new String[0];
+        rowCount = 0;
+        fireTableDataChanged();
+    }
+
+    // Appends scanned photos with a single insert event
+    public void addPhotos(List<ScannedPhoto> photos) {
+        if (photos.isEmpty()) {
+            return;
+        }
+        ensureCapacity(rowCount + photos.size());
+
+        int firstRow = rowCount;
+        for (ScannedPhoto photo : photos) {
+            files[rowCount] = photo.getFile();
+            originalTimes[rowCount] = photo.getOriginalTime();
+            unshiftedTimes[rowCount] = photo.getUnshiftedTime();
+            recorded[rowCount] = photo.getShiftRecord() != null;
+            states[rowCount] = photo.isError() ? ERROR : photo.hasOriginalDate() ? DATED : UNDATED;
+            problems[rowCount] = null;
+            rowCount++;
+        }
+        fireTableRowsInserted(firstRow, rowCount - 1);
+    }
+
+    // Flags the row of a photo whose written copy did not match what was planned
+    public void markVerificationFailed(File file, String problem) {
+        for (int row = 0; row < rowCount; row++) {
+            if (files[row].equals(file)) {
+                problems[row] = problem;
+                fireTableCellUpdated(row, NEW_DATE_COLUMN);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sets the time added to every original date. Until the shift is known the
+     * "New Date" column shows a placeholder.
+     */
+    public void setTimeToAdd(long timeToAdd, boolean known) {
+        this.timeToAdd = timeToAdd;
+        this.shiftKnown = known;
+        if (rowCount > 0) {
+            fireTableChanged(new TableModelEvent(this, 0, rowCount - 1, NEW_DATE_COLUMN));
+        }
+    }
+
+    // Sets what the "New Date" column shows for photos shifted by an earlier update
+    public void setRerunMode(RerunMode rerunMode) {
+        this.rerunMode = rerunMode;
+        if (rowCount > 0) {
+            fireTableChanged(new TableModelEvent(this, 0, rowCount - 1, NEW_DATE_COLUMN));
+        }
+    }
+
+    /**
+     * Returns the latest original date, or ScannedPhoto.NO_DATE if no photo
+     * has one. Unless shift records are ignored, photos shifted before count
+     * with the date they had before.
+     */
+    public long getMostRecentTime() {
+        long[] times = rerunMode.usesRecords() ? unshiftedTimes : originalTimes;
+        long mostRecentTime = ScannedPhoto.NO_DATE;
+        for (int row = 0; row < rowCount; row++) {
+            if (states[row] == DATED) {
+                mostRecentTime = Math.max(mostRecentTime, times[row]);
+            }
+        }
+        return mostRecentTime;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= files.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, files.length * 2));
+        files = Arrays.copyOf(files, newCapacity);
+        originalTimes = Arrays.copyOf(originalTimes, newCapacity);
+        unshiftedTimes = Arrays.copyOf(unshiftedTimes, newCapacity);
+        recorded = Arrays.copyOf(recorded, newCapacity);
+        states = Arrays.copyOf(states, newCapacity);
+        problems = Arrays.copyOf(problems, newCapacity);
+    }
+}
@@ -0,0 +1,136 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads back each photo after it was written and checks it, on threads of
+ * its own so checking overlaps with the photos still being written.
+ *
+ * The date is read from the header again and compared with the planned one.
+ * The image data is checksummed and compared with the checksum taken from
+ * the source while it was copied. A date patched in place is checked to lie
+ * in the header instead, since nothing else in the file was written.
+ */
+public class PhotoVerifier {
+    public interface Listener {
+        // Called from the verifier's threads with the photo the batch was given; problem is null when it checked out
+        void photoVerified(File source, String problem);
+    }
+
+    /**
+     * What was written to one photo, to check it against.
+     */
+    static class Check {
+        final File source;
+        // The file that was written, which is the source itself when updating in place
+        final File file;
+        // Planned new date in EXIF format, or null for a photo copied without a date
+        final String plannedDate;
+        // Checksum of the source's image data, or ScanData.NO_HASH
+        final long scanHash;
+        // Where the date was patched, or -1 if the photo was rewritten
+        final long patchedOffset;
+
+        Check(File source, File file, String plannedDate, long scanHash, long patchedOffset) {
+            this.source = source;
+            this.file = file;
+            this.plannedDate = plannedDate;
+            this.scanHash = scanHash;
+            this.patchedOffset = patchedOffset;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final StageTimings timings;
+    private final Listener listener;
+    private final AtomicInteger verifiedCount = new AtomicInteger();
+    private final AtomicInteger mismatchCount = new AtomicInteger();
+
+    public PhotoVerifier(int threadCount, StageTimings timings, Listener listener) {
+        this.executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "photo-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timings = timings;
+        this.listener = listener;
+    }
+
+    public static int defaultThreadCount() {
+        // Reading back is cheaper than writing, so fewer threads keep up
+        return Math.max(1, BatchWriter.defaultThreadCount() / 2);
+    }
+
+    void submit(Check check) {
+        executor.execute(() -> {
+            String problem = verify(check);
+            verifiedCount.incrementAndGet();
+            if (problem != null) {
+                mismatchCount.incrementAndGet();
+            }
+            listener.photoVerified(check.source, problem);
+        });
+    }
+
+    // Waits until every photo submitted so far has been checked
+    public void finish() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    public int getVerifiedCount() {
+        return verifiedCount.get();
+    }
+
+    public int getMismatchCount() {
+        return mismatchCount.get();
+    }
+
+    private String verify(Check check) {
+        File file = check.file;
+        StageTimings.Span span = timings.start(StageTimings.Stage.VERIFY);
+        long hashed = 0;
+        try {
+            if (check.plannedDate != null) {
+                ScannedPhoto photo = PhotoScanner.readPhoto(file);
+                if (photo.isError() || !photo.hasOriginalDate()) {
+                    return "The date could not be read back";
+                }
+                String date = PhotoWriter.formatExifDate(photo.getOriginalTime());
+                if (!date.equals(check.plannedDate)) {
+                    return "Date is " + date + " instead of " + check.plannedDate;
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long scanStart = ScanData.findStart(channel);
+                if (scanStart < 0) {
+                    return "Image data not found";
+                }
+                if (check.patchedOffset >= 0) {
+                    if (check.patchedOffset >= scanStart) {
+                        return "The date was patched inside the image data";
+                    }
+                } else if (check.scanHash != ScanData.NO_HASH) {
+                    hashed = channel.size() - scanStart;
+                    if (ScanData.hash(channel, scanStart) != check.scanHash) {
+                        return "Image data differs from the original";
+                    }
+                }
+            }
+            return null;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return "Could not read back: " + e.getMessage();
+        } finally {
+            timings.end(span, file, hashed);
+        }
+    }
+}
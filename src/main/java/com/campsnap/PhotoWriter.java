@@ -0,0 +1,391 @@
+package com.campsnap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+
+/**
+ * Writes shifted dates into photos. Safe to share between threads.
+ *
+ * The original date comes from the scan, so each photo is read from disk once.
+ * Normally only the header is read and rebuilt, and the image data is copied
+ * channel to channel. Photos with unusual headers are read whole and their
+ * bytes reused for both parsing and rewriting the metadata.
+ *
+ * Besides the date taken, the other dates in the tag set are shifted by the
+ * same amount in the same write, so each photo is still written only once.
+ *
+ * Unless the rerun mode is IGNORE, every photo written also gets a
+ * ShiftRecord, and a photo that has one is shifted from the date it had
+ * before its first shift, or not at all. A first record has to be added to
+ * the header, so such a photo is rewritten rather than patched; later runs
+ * patch the record along with the dates.
+ *
+ * With a verifier, every written photo is handed to it once written, along
+ * with a checksum of the source's image data taken as it was copied.
+ */
+public class PhotoWriter {
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private final long timeToAdd;
+    private final StageTimings timings;
+    private final PhotoVerifier verifier;
+    private final Set<DateTag> tags;
+    private final RerunMode rerunMode;
+    private static final DateTimeFormatter EXIF_DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    public PhotoWriter(long timeToAdd, StageTimings timings) {
+        this(timeToAdd, timings, null);
+    }
+
+    public PhotoWriter(long timeToAdd, StageTimings timings, PhotoVerifier verifier) {
+        this(timeToAdd, timings, verifier, DateTag.ORIGINAL_ONLY);
+    }
+
+    public PhotoWriter(long timeToAdd, StageTimings timings, PhotoVerifier verifier, Set<DateTag> tags) {
+        this(timeToAdd, timings, verifier, tags, RerunMode.IGNORE);
+    }
+
+    public PhotoWriter(long timeToAdd, StageTimings timings, PhotoVerifier verifier, Set<DateTag> tags,
+            RerunMode rerunMode) {
+        this.timeToAdd = timeToAdd;
+        this.timings = timings;
+        this.verifier = verifier;
+        this.tags = tags;
+        this.rerunMode = rerunMode;
+    }
+
+    public StageTimings getTimings() {
+        return timings;
+    }
+
+    public long getTimeToAdd() {
+        return timeToAdd;
+    }
+
+    public Set<DateTag> getDateTags() {
+        return tags;
+    }
+
+    public RerunMode getRerunMode() {
+        return rerunMode;
+    }
+
+    /**
+     * The time this writer moves the dates of a photo by: timeToAdd, less
+     * what its ShiftRecord says was applied when re-basing, or 0 when
+     * skipping photos that have a record.
+     */
+    public long shiftFor(ScannedPhoto photo) {
+        ShiftRecord shiftRecord = photo.getShiftRecord();
+        if (shiftRecord == null || !rerunMode.usesRecords()) {
+            return timeToAdd;
+        }
+        return rerunMode == RerunMode.REBASE ? timeToAdd - shiftRecord.getAppliedShift() : 0;
+    }
+
+    // Whether a photo was shifted before and is left as it is
+    public boolean skips(ScannedPhoto photo) {
+        return rerunMode.usesRecords() && photo.getShiftRecord() != null && shiftFor(photo) == 0;
+    }
+
+    public String formatNewDate(ScannedPhoto photo) {
+        // Calculate new date by adding the time difference
+        return formatExifDate(photo.getOriginalTime() + shiftFor(photo));
+    }
+
+    /**
+     * The record to store in a photo once it is shifted, or null for a photo
+     * without one when no records are written. A record the photo already
+     * has is kept up to date in every mode.
+     */
+    private ShiftRecord recordFor(ScannedPhoto photo) {
+        ShiftRecord shiftRecord = photo.getShiftRecord();
+        if (shiftRecord == null) {
+            return rerunMode.usesRecords() ? new ShiftRecord(photo.getOriginalTime(), timeToAdd) : null;
+        }
+        return new ShiftRecord(shiftRecord.getOriginalTime(), shiftRecord.getAppliedShift() + shiftFor(photo),
+            shiftRecord.getValueOffset());
+    }
+
+    // Formats epoch milliseconds the way EXIF stores dates
+    public static String formatExifDate(long time) {
+        return EXIF_DATE_FORMAT.format(Instant.ofEpochMilli(time));
+    }
+
+    /**
+     * Replaces the date in the original file, either by patching the stored
+     * value in place or by rewriting the metadata into a temporary file.
+     */
+    public void updateOriginal(ScannedPhoto photo, boolean patchInPlace)
+            throws IOException, ImageReadException, ImageWriteException {
+        File file = photo.getFile();
+        String newValue = formatNewDate(photo);
+        long shift = shiftFor(photo);
+        ShiftRecord shiftRecord = recordFor(photo);
+
+        // A photo without a record yet has no room for one, so only one that has a record can be patched
+        if (patchInPlace && (shiftRecord == null || shiftRecord.getValueOffset() >= 0)) {
+            StageTimings.Span span = timings.start(StageTimings.Stage.PATCH);
+            long patchedAt = ExifDatePatcher.patch(file, photo.getDateOffset(),
+                formatExifDate(photo.getOriginalTime()), newValue, shift, tags, shiftRecord);
+            if (patchedAt >= 0) {
+                timings.end(span, file, newValue.length());
+                verify(file, file, newValue, ScanData.NO_HASH, patchedAt);
+                return;
+            }
+        }
+
+        // Create the temporary file next to the original so replacing it is a rename, not a copy
+        File tempFile = File.createTempFile(".temp_", "_" + file.getName(), file.getAbsoluteFile().getParentFile());
+        StageTimings.Span span;
+        Long scanHash;
+        boolean moved = false;
+        try {
+            // Write the updated metadata to the temporary file
+            scanHash = writeSpliced(file, tempFile, newValue, shift, shiftRecord);
+            if (scanHash == null) {
+                byte[] source = readFile(file);
+                writeFile(tempFile, MetadataRewriter.rewrite(file, source, newValue, shift, tags, shiftRecord,
+                    timings));
+                scanHash = scanHashOf(source);
+            }
+
+            // Sync it first, so a photo the journal marks done never has its data only in memory
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            // Replace the original file with the temporary file
+            span = timings.start(StageTimings.Stage.MOVE);
+            Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            // A half-written temporary file would be picked up as a photo by the next run
+            if (!moved) {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        }
+        timings.end(span, file);
+        verify(file, file, newValue, scanHash, -1);
+    }
+
+    // Writes a copy of the photo with the shifted date to destFile
+    public void copyTo(ScannedPhoto photo, File destFile)
+            throws IOException, ImageReadException, ImageWriteException {
+        String newValue = formatNewDate(photo);
+        long shift = shiftFor(photo);
+        ShiftRecord shiftRecord = recordFor(photo);
+        Long scanHash = writeSpliced(photo.getFile(), destFile, newValue, shift, shiftRecord);
+        if (scanHash == null) {
+            byte[] source = readFile(photo.getFile());
+            writeFile(destFile, MetadataRewriter.rewrite(photo.getFile(), source, newValue, shift, tags, shiftRecord,
+                timings));
+            scanHash = scanHashOf(source);
+        }
+        verify(photo.getFile(), destFile, newValue, scanHash, -1);
+    }
+
+    /**
+     * Adds a copy of the photo with the shifted date to the archive as name.
+     * Only the rebuilt header is held here; the archive reads the image data
+     * from the source as it writes the entry. Archived photos aren't verified.
+     */
+    public void copyTo(ScannedPhoto photo, ArchiveWriter archive, String name)
+            throws IOException, ImageReadException, ImageWriteException {
+        File source = photo.getFile();
+        String newValue = formatNewDate(photo);
+        long shift = shiftFor(photo);
+        ShiftRecord shiftRecord = recordFor(photo);
+        Splice splice = splice(source, newValue, shift, shiftRecord);
+        if (splice == null) {
+            byte[] rewritten = MetadataRewriter.rewrite(source, readFile(source), newValue, shift, tags, shiftRecord,
+                timings);
+            archive.add(name, rewritten, null, 0, source.lastModified());
+            return;
+        }
+
+        byte[] head = new byte[splice.head.remaining() + splice.app1.remaining()];
+        splice.head.get(head, 0, splice.head.remaining());
+        splice.app1.get(head, head.length - splice.app1.remaining(), splice.app1.remaining());
+        archive.add(name, head, source, splice.end, source.lastModified());
+    }
+
+    // Adds a photo to the archive without changes, streamed from disk as the entry is written
+    public void copyUnchanged(File sourceFile, ArchiveWriter archive, String name) throws IOException {
+        archive.add(name, new byte[0], sourceFile, 0, sourceFile.lastModified());
+    }
+
+    // Copies a photo without changes, letting the kernel move the bytes
+    public void copyUnchanged(File sourceFile, File destFile) throws IOException {
+        StageTimings.Span span = timings.start(StageTimings.Stage.WRITE);
+        long size;
+        long scanHash = ScanData.NO_HASH;
+        try (FileChannel in = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = openForWrite(destFile)) {
+            size = in.size();
+            long scanStart = verifier != null ? ScanData.findStart(in) : -1;
+            if (scanStart >= 0) {
+                scanHash = ScanData.copyHashing(in, 0, size, out, scanStart);
+            } else {
+                transferFully(in, 0, size, out);
+            }
+        }
+        timings.end(span, destFile, size);
+        verify(sourceFile, destFile, null, scanHash, -1);
+    }
+
+    /**
+     * The source's header up to its EXIF segment and the rebuilt segment that
+     * replaces it; the source continues unchanged from end.
+     */
+    private static class Splice {
+        final ByteBuffer head;
+        final ByteBuffer app1;
+        final int end;
+
+        Splice(ByteBuffer head, ByteBuffer app1, int end) {
+            this.head = head;
+            this.app1 = app1;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Rebuilds the source's EXIF segment from its header prefix. Returns null
+     * if the segment is not within the prefix or the rebuilt segment would
+     * not fit, so the caller can fall back to a full rewrite.
+     */
+    private Splice splice(File source, String newValue, long shift, ShiftRecord shiftRecord)
+            throws IOException, ImageReadException, ImageWriteException {
+        StageTimings.Span span = timings.start(StageTimings.Stage.READ);
+        ByteBuffer prefix = ExifDateReader.readPrefix(source);
+        timings.end(span, source, prefix.limit());
+        ExifDateReader.ExifSegment segment = ExifDateReader.findExifSegment(prefix);
+        if (segment == null || segment == ExifDateReader.ExifSegment.MISSING || segment.end > prefix.limit()) {
+            return null;
+        }
+
+        byte[] exifBytes = new byte[segment.end - segment.tiffStart()];
+        prefix.get(segment.tiffStart(), exifBytes);
+        byte[] tiff = MetadataRewriter.rebuildTiff(source, exifBytes, newValue, shift, tags, shiftRecord, timings);
+        if (tiff == null) {
+            return null;
+        }
+
+        int segmentLength = 2 + EXIF_HEADER.length + tiff.length;
+        if (segmentLength > 0xFFFF) {
+            return null;
+        }
+        ByteBuffer app1 = ByteBuffer.allocate(2 + segmentLength);
+        app1.put((byte) 0xFF).put((byte) 0xE1).putShort((short) segmentLength).put(EXIF_HEADER);
+        app1.put(tiff).flip();
+
+        ByteBuffer head = prefix.duplicate();
+        head.position(0).limit(segment.start);
+        return new Splice(head, app1, segment.end);
+    }
+
+    /**
+     * Writes destFile as the source's header with a rebuilt EXIF segment,
+     * followed by the rest of the source copied channel to channel. Only the
+     * header passes through the heap; the image data is moved by the kernel.
+     *
+     * Returns the checksum of the image data, or ScanData.NO_HASH when there
+     * is no verifier. Returns null without touching destFile when splice()
+     * finds nothing to splice.
+     */
+    private Long writeSpliced(File source, File destFile, String newValue, long shift, ShiftRecord shiftRecord)
+            throws IOException, ImageReadException, ImageWriteException {
+        Splice splice = splice(source, newValue, shift, shiftRecord);
+        if (splice == null) {
+            return null;
+        }
+
+        StageTimings.Span span = timings.start(StageTimings.Stage.WRITE);
+        long written;
+        long scanHash = ScanData.NO_HASH;
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = openForWrite(destFile)) {
+            written = splice.head.limit() + splice.app1.limit() + in.size() - splice.end;
+            writeFully(out, splice.head);
+            writeFully(out, splice.app1);
+            long scanStart = verifier != null ? ScanData.findStart(in) : -1;
+            if (scanStart >= splice.end) {
+                // Checksum the image data on its way through for the verifier
+                scanHash = ScanData.copyHashing(in, splice.end, in.size() - splice.end, out, scanStart);
+            } else {
+                transferFully(in, splice.end, in.size() - splice.end, out);
+            }
+        }
+        timings.end(span, destFile, written);
+        return scanHash;
+    }
+
+    private static FileChannel openForWrite(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void transferFully(FileChannel in, long position, long count, FileChannel out)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = in.transferTo(position + transferred, count - transferred, out);
+            if (n <= 0) {
+                throw new IOException("Source file ended early while copying");
+            }
+            transferred += n;
+        }
+    }
+
+    private long scanHashOf(byte[] source) {
+        if (verifier == null) {
+            return ScanData.NO_HASH;
+        }
+        int scanStart = ScanData.findStart(source);
+        return scanStart >= 0 ? ScanData.hash(source, scanStart) : ScanData.NO_HASH;
+    }
+
+    private void verify(File source, File file, String plannedDate, long scanHash, long patchedOffset) {
+        if (verifier != null) {
+            verifier.submit(new PhotoVerifier.Check(source, file, plannedDate, scanHash, patchedOffset));
+        }
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        StageTimings.Span span = timings.start(StageTimings.Stage.READ);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        timings.end(span, file, bytes.length);
+        return bytes;
+    }
+
+    private void writeFile(File destFile, byte[] bytes) throws IOException {
+        StageTimings.Span span = timings.start(StageTimings.Stage.WRITE);
+        try (OutputStream os = new FileOutputStream(destFile)) {
+            os.write(bytes);
+        }
+        timings.end(span, destFile, bytes.length);
+    }
+}
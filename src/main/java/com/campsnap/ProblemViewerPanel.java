@@ -0,0 +1,140 @@
+package com.campsnap;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Pages through the errors and failed verifications of a run, read from its
+ * log files, with a filter on file name, status and message.
+ *
+ * Pages are read in the background. Only the page on screen and where each
+ * page seen so far starts are kept, however long the log is.
+ */
+public class ProblemViewerPanel extends JPanel {
+    private static final int PAGE_SIZE = 200;
+    private static final String[] COLUMN_NAMES = {"File", "Status", "Message"};
+
+    private final ResultLogReader reader;
+    private final DefaultTableModel tableModel = new DefaultTableModel(COLUMN_NAMES, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JTextField filterField = new JTextField(20);
+    private final JButton previousButton = new JButton("< Previous");
+    private final JButton nextButton = new JButton("Next >");
+    private final JLabel pageLabel = new JLabel(" ");
+
+    // Where each page seen so far starts, for the current filter
+    private final List<ResultLogReader.Position> pageStarts = new ArrayList<>();
+    private int page;
+    private String filter = "";
+    private SwingWorker<ResultLogReader.Page, Void> loader;
+
+    public ProblemViewerPanel(ResultLog log) {
+        super(new BorderLayout(0, 5));
+        this.reader = new ResultLogReader(log.getFiles());
+
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        filterPanel.add(new JLabel("Filter:"));
+        filterPanel.add(filterField);
+        JButton filterButton = new JButton("Apply");
+        filterPanel.add(filterButton);
+        filterButton.addActionListener(e -> applyFilter());
+        filterField.addActionListener(e -> applyFilter());
+
+        JTable table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(250);
+        table.getColumnModel().getColumn(1).setPreferredWidth(70);
+        table.getColumnModel().getColumn(2).setPreferredWidth(400);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(720, 360));
+
+        JPanel pagePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        pagePanel.add(pageLabel);
+        pagePanel.add(previousButton);
+        pagePanel.add(nextButton);
+        previousButton.addActionListener(e -> showPage(page - 1));
+        nextButton.addActionListener(e -> showPage(page + 1));
+
+        add(filterPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        add(pagePanel, BorderLayout.SOUTH);
+
+        pageStarts.add(ResultLogReader.Position.START);
+        showPage(0);
+    }
+
+    private void applyFilter() {
+        filter = filterField.getText().trim();
+        pageStarts.clear();
+        pageStarts.add(ResultLogReader.Position.START);
+        showPage(0);
+    }
+
+    private void showPage(int newPage) {
+        if (loader != null) {
+            loader.cancel(false);
+        }
+        previousButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        pageLabel.setText("Loading...");
+
+        ResultLogReader.Position start = pageStarts.get(newPage);
+        String pageFilter = filter;
+        loader = new SwingWorker<ResultLogReader.Page, Void>() {
+            @Override
+            protected ResultLogReader.Page doInBackground() throws Exception {
+                return reader.read(start, PAGE_SIZE, pageFilter);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    showLoaded(newPage, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    pageLabel.setText("Could not read the log: " + e.getMessage());
+                }
+            }
+        };
+        loader.execute();
+    }
+
+    private void showLoaded(int loadedPage, ResultLogReader.Page loaded) {
+        page = loadedPage;
+        if (loaded.next != null && pageStarts.size() == page + 1) {
+            pageStarts.add(loaded.next);
+        }
+
+        tableModel.setRowCount(0);
+        for (ResultLogReader.Problem problem : loaded.problems) {
+            tableModel.addRow(new Object[] {problem.file, problem.status, problem.message});
+        }
+
+        int first = page * PAGE_SIZE + 1;
+        pageLabel.setText(loaded.problems.isEmpty()
+            ? "No problems found"
+            : String.format("Showing %d to %d", first, first + loaded.problems.size() - 1));
+        previousButton.setEnabled(page > 0);
+        nextButton.setEnabled(loaded.next != null);
+    }
+}
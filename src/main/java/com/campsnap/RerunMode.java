@@ -0,0 +1,52 @@
+package com.campsnap;
+
+import java.util.Locale;
+
+/**
+ * What an update does with photos that carry a ShiftRecord from an earlier
+ * run. Skipping and re-basing both record the shift in every photo they
+ * write. Ignoring shifts every photo as updates did before records existed,
+ * only adding to the records photos already have.
+ */
+public enum RerunMode {
+    SKIP("skip", "Skip them"),
+    // Shift from the date taken before the first shift, so the photo ends up where one run would put it
+    REBASE("rebase", "Re-base them"),
+    IGNORE("ignore", "Shift them again");
+
+    private final String key;
+    private final String label;
+
+    RerunMode(String key, String label) {
+        this.key = key;
+        this.label = label;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // Whether photos written in this mode get a ShiftRecord and existing ones decide the shift
+    public boolean usesRecords() {
+        return this != IGNORE;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+    public static RerunMode parse(String key) {
+        String trimmed = key.trim().toLowerCase(Locale.ROOT);
+        for (RerunMode mode : values()) {
+            if (mode.key.equals(trimmed)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown mode: " + key.trim());
+    }
+}
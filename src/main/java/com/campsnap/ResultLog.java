@@ -0,0 +1,193 @@
+package com.campsnap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes the outcome of every photo in one run to log files as it happens.
+ *
+ * A new file is started whenever the current one reaches a size limit, and
+ * the oldest log files are deleted once the directory holds too many. Only
+ * a count per status and the most recent problems are kept in memory, so a
+ * run of a million photos needs no more heap than a run of a hundred; the
+ * full list is read back from the files when it is asked for.
+ */
+public class ResultLog implements Closeable {
+    public static final long DEFAULT_MAX_FILE_BYTES = 8L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 20;
+    public static final int RECENT_PROBLEMS = 10;
+
+    private static final DateTimeFormatter RUN_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * Counts the characters written to the current file, which for the
+     * mostly ASCII records is close enough to its size in bytes.
+     */
+    private static class CountingWriter extends FilterWriter {
+        long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            super.write(chars, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            super.write(text, offset, length);
+            count += length;
+        }
+    }
+
+    private final Path directory;
+    private final String name;
+    private final ResultReport.Format format;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    // The files of this run in order; a handful even for huge runs
+    private final List<Path> files = new ArrayList<>();
+    private CountingWriter counter;
+    private ResultReport report;
+
+    private final Map<String, Integer> statusCounts = new HashMap<>();
+    private final Deque<String> recentProblems = new ArrayDeque<>();
+
+    /**
+     * Starts the log of a run such as "update" in directory, as CSV or JSON
+     * lines. Older logs beyond maxFiles are deleted.
+     */
+    public ResultLog(Path directory, String run, ResultReport.Format format, long maxFileBytes, int maxFiles)
+            throws IOException {
+        if (format == ResultReport.Format.JSON) {
+            throw new IllegalArgumentException("Logs are written as CSV or JSON lines");
+        }
+        this.directory = directory;
+        this.name = run + "-" + LocalDateTime.now().format(RUN_TIME_FORMAT);
+        this.format = format;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        startFile();
+    }
+
+    public static Path defaultDirectory() {
+        return AppDirectories.configDirectory().resolve("logs");
+    }
+
+    // Errors and failed verifications, as opposed to photos that were processed
+    public static boolean isProblem(String status) {
+        return "error".equals(status) || "mismatch".equals(status);
+    }
+
+    public synchronized void record(File file, String status, long originalTime, long newTime, String message) {
+        statusCounts.merge(status, 1, Integer::sum);
+        if (isProblem(status)) {
+            if (recentProblems.size() == RECENT_PROBLEMS) {
+                recentProblems.removeFirst();
+            }
+            recentProblems.addLast(file.getName() + ": " + (message != null ? message : status));
+        }
+
+        report.record(file, status, originalTime, newTime, message);
+        if (counter.count >= maxFileBytes) {
+            try {
+                report.close();
+                startFile();
+            } catch (IOException e) {
+                // Keep writing to the full file rather than losing records
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public synchronized int getCount(String status) {
+        return statusCounts.getOrDefault(status, 0);
+    }
+
+    public synchronized int getProblemCount() {
+        return getCount("error") + getCount("mismatch");
+    }
+
+    // The last RECENT_PROBLEMS problems, oldest first
+    public synchronized List<String> getRecentProblems() {
+        return new ArrayList<>(recentProblems);
+    }
+
+    // The files written so far, oldest first
+    public synchronized List<Path> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    public ResultReport.Format getFormat() {
+        return format;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        report.close();
+    }
+
+    private void startFile() throws IOException {
+        String extension = format == ResultReport.Format.CSV ? ".csv" : ".jsonl";
+        Path file = directory.resolve(String.format("%s-%03d%s", name, files.size() + 1, extension));
+        counter = new CountingWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        report = new ResultReport(new PrintWriter(counter), format);
+        files.add(file);
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() {
+        List<Path> logs;
+        try (Stream<Path> paths = Files.list(directory)) {
+            logs = paths
+                .filter(path -> {
+                    String fileName = path.getFileName().toString();
+                    return fileName.endsWith(".csv") || fileName.endsWith(".jsonl");
+                })
+                .sorted(Comparator.comparing(path -> path.toFile().lastModified()))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (int i = 0; i < logs.size() - maxFiles; i++) {
+            // The files of this run are the newest, so only earlier runs are removed
+            if (!files.contains(logs.get(i))) {
+                try {
+                    Files.delete(logs.get(i));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.campsnap;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the problems recorded in the JSON lines files of a ResultLog back a
+ * page at a time. Only one page is held in memory; each page is found by
+ * reading on from where the previous one ended.
+ */
+class ResultLogReader {
+    /**
+     * One error or failed verification from the log.
+     */
+    static class Problem {
+        final String file;
+        final String status;
+        final String message;
+
+        Problem(String file, String status, String message) {
+            this.file = file;
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * A place in the log: a file of the log and a byte offset within it.
+     */
+    static class Position {
+        static final Position START = new Position(0, 0);
+
+        final int fileIndex;
+        final long offset;
+
+        Position(int fileIndex, long offset) {
+            this.fileIndex = fileIndex;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The problems on one page and where the next page starts, which is null
+     * after the last page.
+     */
+    static class Page {
+        final List<Problem> problems;
+        final Position next;
+
+        Page(List<Problem> problems, Position next) {
+            this.problems = problems;
+            this.next = next;
+        }
+    }
+
+    private final List<Path> files;
+
+    ResultLogReader(List<Path> files) {
+        this.files = files;
+    }
+
+    /**
+     * Reads up to pageSize problems from start on whose file, status or
+     * message contains filter, ignoring case. An empty filter matches all.
+     */
+    Page read(Position start, int pageSize, String filter) throws IOException {
+        String lowerCaseFilter = filter.toLowerCase(Locale.ROOT);
+        List<Problem> problems = new ArrayList<>();
+        for (int fileIndex = start.fileIndex; fileIndex < files.size(); fileIndex++) {
+            long offset = fileIndex == start.fileIndex ? start.offset : 0;
+            try (FileChannel channel = FileChannel.open(files.get(fileIndex), StandardOpenOption.READ)) {
+                InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(offset)));
+                ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                while (true) {
+                    line.reset();
+                    int c;
+                    while ((c = in.read()) >= 0 && c != '\n') {
+                        line.write(c);
+                    }
+                    if (c < 0 && line.size() == 0) {
+                        break;
+                    }
+                    offset += line.size() + (c < 0 ? 0 : 1);
+
+                    Problem problem = parse(line.toString(StandardCharsets.UTF_8));
+                    if (problem != null && matches(problem, lowerCaseFilter)) {
+                        problems.add(problem);
+                        if (problems.size() == pageSize) {
+                            return new Page(problems, new Position(fileIndex, offset));
+                        }
+                    }
+                }
+            }
+        }
+        return new Page(problems, null);
+    }
+
+    private static boolean matches(Problem problem, String lowerCaseFilter) {
+        return lowerCaseFilter.isEmpty()
+            || contains(problem.file, lowerCaseFilter)
+            || contains(problem.status, lowerCaseFilter)
+            || contains(problem.message, lowerCaseFilter);
+    }
+
+    private static boolean contains(String value, String lowerCaseFilter) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerCaseFilter);
+    }
+
+    // Returns the record on a line if it is a problem, or null
+    private static Problem parse(String line) {
+        Map<String, String> fields = parseObject(line);
+        if (fields == null || !ResultLog.isProblem(fields.get("status"))) {
+            return null;
+        }
+        return new Problem(fields.get("file"), fields.get("status"), fields.get("message"));
+    }
+
+    /**
+     * Parses the flat objects ResultReport writes, whose values are all
+     * strings or null. Returns null for anything else, such as a line cut
+     * short when the application was stopped.
+     */
+    private static Map<String, String> parseObject(String line) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipSpaces(line, 0)};
+        if (!expect(line, pos, '{')) {
+            return null;
+        }
+        while (true) {
+            String key = parseString(line, pos);
+            if (key == null || !expect(line, pos, ':')) {
+                return null;
+            }
+            pos[0] = skipSpaces(line, pos[0]);
+            if (line.startsWith("null", pos[0])) {
+                pos[0] += 4;
+                fields.put(key, null);
+            } else {
+                String value = parseString(line, pos);
+                if (value == null) {
+                    return null;
+                }
+                fields.put(key, value);
+            }
+            pos[0] = skipSpaces(line, pos[0]);
+            if (expect(line, pos, '}')) {
+                return fields;
+            }
+            if (!expect(line, pos, ',')) {
+                return null;
+            }
+            pos[0] = skipSpaces(line, pos[0]);
+        }
+    }
+
+    private static String parseString(String line, int[] pos) {
+        if (!expect(line, pos, '"')) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        int i = pos[0];
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                pos[0] = i;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+            } else if (i < line.length() && line.charAt(i) == 'u' && i + 5 <= line.length()) {
+                try {
+                    value.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                i += 5;
+            } else if (i < line.length()) {
+                // ResultReport only escapes quotes and backslashes besides control characters
+                value.append(line.charAt(i++));
+            }
+        }
+        return null;
+    }
+
+    private static boolean expect(String line, int[] pos, char c) {
+        int i = skipSpaces(line, pos[0]);
+        if (i < line.length() && line.charAt(i) == c) {
+            pos[0] = i + 1;
+            return true;
+        }
+        return false;
+    }
+
+    private static int skipSpaces(String line, int i) {
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+}
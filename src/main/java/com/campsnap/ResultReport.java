@@ -0,0 +1,129 @@
+package com.campsnap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes one record per processed photo as CSV, as a JSON array or as JSON
+ * lines, as the results come in. Nothing is kept in memory between records.
+ *
+ * Records can be written from any thread. Write errors are reported when the
+ * report is closed, so callers on worker threads don't have to handle them.
+ */
+public class ResultReport implements Closeable {
+    public enum Format {
+        CSV,
+        JSON,
+        // One JSON object per line, so a file can be read back a record at a time
+        JSONL
+    }
+
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final PrintWriter out;
+    private final Format format;
+    private boolean firstRecord = true;
+
+    public ResultReport(PrintWriter out, Format format) {
+        this.out = out;
+        this.format = format;
+        if (format == Format.CSV) {
+            out.write("file,status,date_taken,new_date,message\n");
+        } else if (format == Format.JSON) {
+            out.write("[");
+        }
+    }
+
+    // Picks the format from a name such as "json" or a file name such as "results.csv"
+    public static Format formatFor(String name) {
+        String lowerCase = name.toLowerCase();
+        if (lowerCase.endsWith("jsonl")) {
+            return Format.JSONL;
+        }
+        return lowerCase.endsWith("json") ? Format.JSON : Format.CSV;
+    }
+
+    /**
+     * Records the outcome for one photo. Times are epoch milliseconds or
+     * ScannedPhoto.NO_DATE, and message may be null.
+     */
+    public synchronized void record(File file, String status, long originalTime, long newTime, String message) {
+        String path = file.getPath();
+        String dateTaken = formatDate(originalTime);
+        String newDate = formatDate(newTime);
+
+        if (format == Format.CSV) {
+            out.write(csv(path) + "," + csv(status) + "," + csv(dateTaken) + ","
+                + csv(newDate) + "," + csv(message) + "\n");
+        } else {
+            String record = "{\"file\": " + json(path)
+                + ", \"status\": " + json(status)
+                + ", \"dateTaken\": " + json(dateTaken)
+                + ", \"newDate\": " + json(newDate)
+                + ", \"message\": " + json(message) + "}";
+            if (format == Format.JSONL) {
+                out.write(record + "\n");
+            } else {
+                out.write(firstRecord ? "\n  " : ",\n  ");
+                out.write(record);
+            }
+        }
+        firstRecord = false;
+    }
+
+    // Pushes records written so far to the file, for reports that stay open a long time
+    public synchronized void flush() {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (format == Format.JSON) {
+            out.write(firstRecord ? "]\n" : "\n]\n");
+        }
+        out.flush();
+        boolean failed = out.checkError();
+        out.close();
+        if (failed) {
+            throw new IOException("Could not write the result report");
+        }
+    }
+
+    private static String formatDate(long time) {
+        return time == ScannedPhoto.NO_DATE ? null : DATE_FORMAT.format(Instant.ofEpochMilli(time));
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
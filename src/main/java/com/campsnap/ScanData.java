@@ -0,0 +1,154 @@
+package com.campsnap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Locates and checksums the compressed image data of a JPEG, which starts at
+ * the first start-of-scan marker and must come through a date change
+ * untouched. CRC32C is used because the JVM computes it with CPU
+ * instructions, so hashing keeps up with the disk.
+ */
+final class ScanData {
+    // Hash of a photo whose image data was not checksummed
+    static final long NO_HASH = -1;
+
+    // Returned by nextMarker() at the start of scan
+    private static final int SCAN = 0;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(COPY_BUFFER_SIZE));
+
+    private ScanData() {
+    }
+
+    /**
+     * Returns the position of the first SOS marker, walking the segment
+     * lengths from the start of the file, or -1 if the file ends first or is
+     * not a JPEG.
+     */
+    static long findStart(FileChannel channel) throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(4);
+        long size = channel.size();
+        long pos = 2;
+        while (pos + 4 <= size) {
+            marker.clear();
+            while (marker.hasRemaining()) {
+                if (channel.read(marker, pos + marker.position()) < 0) {
+                    return -1;
+                }
+            }
+            int next = nextMarker(marker.getShort(0) & 0xFFFF, marker.getShort(2) & 0xFFFF);
+            if (next == SCAN) {
+                return pos;
+            }
+            if (next < 0) {
+                return -1;
+            }
+            pos += next;
+        }
+        return -1;
+    }
+
+    // As findStart(FileChannel), for a photo that is already in memory
+    static int findStart(byte[] jpeg) {
+        int pos = 2;
+        while (pos + 4 <= jpeg.length) {
+            int code = ((jpeg[pos] & 0xFF) << 8) | (jpeg[pos + 1] & 0xFF);
+            int length = ((jpeg[pos + 2] & 0xFF) << 8) | (jpeg[pos + 3] & 0xFF);
+            int next = nextMarker(code, length);
+            if (next == SCAN) {
+                return pos;
+            }
+            if (next < 0) {
+                return -1;
+            }
+            pos += next;
+        }
+        return -1;
+    }
+
+    // Bytes to the next marker, SCAN at the start of scan, or -1 for anything unexpected
+    private static int nextMarker(int code, int length) {
+        if ((code & 0xFF00) != 0xFF00) {
+            return -1;
+        }
+        int marker = code & 0xFF;
+        if (marker == 0xDA) {
+            return SCAN;
+        }
+        if (marker == 0xFF) {
+            // Fill byte before the actual marker
+            return 1;
+        }
+        if (marker == 0xD8 || marker == 0xD9) {
+            return -1;
+        }
+        if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+            return 2;
+        }
+        return length < 2 ? -1 : 2 + length;
+    }
+
+    // CRC32C of the channel from position to its end
+    static long hash(FileChannel channel, long position) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = BUFFERS.get();
+        long pos = position;
+        while (true) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            pos += n;
+        }
+        return crc.getValue();
+    }
+
+    // CRC32C of the bytes from offset to the end
+    static long hash(byte[] bytes, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, bytes.length - offset);
+        return crc.getValue();
+    }
+
+    /**
+     * Copies count bytes of in, starting at position, to the end of out,
+     * returning the CRC32C of the copied bytes from hashFrom onwards. The
+     * bytes pass through a reusable direct buffer rather than the kernel's
+     * zero-copy path, so they can be checksummed on the way.
+     */
+    static long copyHashing(FileChannel in, long position, long count, FileChannel out, long hashFrom)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = BUFFERS.get();
+        long end = position + count;
+        long pos = position;
+        while (pos < end) {
+            buffer.clear();
+            if (end - pos < buffer.capacity()) {
+                buffer.limit((int) (end - pos));
+            }
+            int n = in.read(buffer, pos);
+            if (n <= 0) {
+                throw new IOException("Source file ended early while copying");
+            }
+            buffer.flip();
+            if (pos + n > hashFrom) {
+                ByteBuffer hashed = buffer.duplicate();
+                hashed.position((int) Math.max(0, hashFrom - pos));
+                crc.update(hashed);
+            }
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            pos += n;
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,73 @@
+package com.campsnap;
+
+import java.io.File;
+
+/**
+ * The result of reading the original date from a single photo.
+ */
+public class ScannedPhoto {
+    // Marker for photos without an EXIF original date
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private final File file;
+    private final long originalTime;
+    private final long dateOffset;
+    private final ShiftRecord shiftRecord;
+    private final boolean error;
+
+    public ScannedPhoto(File file, long originalTime) {
+        this(file, originalTime, -1, null, false);
+    }
+
+    public ScannedPhoto(File file, long originalTime, long dateOffset) {
+        this(file, originalTime, dateOffset, null, false);
+    }
+
+    public ScannedPhoto(File file, long originalTime, long dateOffset, ShiftRecord shiftRecord) {
+        this(file, originalTime, dateOffset, shiftRecord, false);
+    }
+
+    private ScannedPhoto(File file, long originalTime, long dateOffset, ShiftRecord shiftRecord, boolean error) {
+        this.file = file;
+        this.originalTime = originalTime;
+        this.dateOffset = dateOffset;
+        this.shiftRecord = shiftRecord;
+        this.error = error;
+    }
+
+    public static ScannedPhoto error(File file) {
+        return new ScannedPhoto(file, NO_DATE, -1, null, true);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Epoch milliseconds, or NO_DATE when the photo has no original date or could not be read
+    public long getOriginalTime() {
+        return originalTime;
+    }
+
+    // File offset of the DateTimeOriginal value, or -1 when it is unknown
+    public long getDateOffset() {
+        return dateOffset;
+    }
+
+    // What an earlier update recorded in the photo, or null if it has no record
+    public ShiftRecord getShiftRecord() {
+        return shiftRecord;
+    }
+
+    // The date taken before any recorded shift, or the date taken itself
+    public long getUnshiftedTime() {
+        return shiftRecord != null ? shiftRecord.getOriginalTime() : originalTime;
+    }
+
+    public boolean hasOriginalDate() {
+        return originalTime != NO_DATE;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+}
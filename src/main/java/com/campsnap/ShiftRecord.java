@@ -0,0 +1,91 @@
+package com.campsnap;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * What an update did to a photo, stored in the photo itself so a later run
+ * can tell it was shifted before from the header alone.
+ *
+ * The record is an ASCII value in a tag of the Exif IFD holding the date
+ * taken before the first shift and the total shift applied since, as
+ * "CampSnap yyyy:MM:dd HH:mm:ss +0000000000000000000" (milliseconds). It has
+ * the same width whatever it holds, so it can be patched in place like the
+ * dates. TIFF leaves tags 65000 to 65535 free for private use; the tag is
+ * one of those.
+ */
+public final class ShiftRecord {
+    public static final int TAG = 0xFE5A;
+    // Characters of the value, without the trailing NUL
+    public static final int LENGTH = 49;
+
+    private static final String PREFIX = "CampSnap ";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private final long originalTime;
+    private final long appliedShift;
+    private final long valueOffset;
+
+    public ShiftRecord(long originalTime, long appliedShift) {
+        this(originalTime, appliedShift, -1);
+    }
+
+    ShiftRecord(long originalTime, long appliedShift, long valueOffset) {
+        this.originalTime = originalTime;
+        this.appliedShift = appliedShift;
+        this.valueOffset = valueOffset;
+    }
+
+    // Epoch milliseconds of the date taken before the photo was first shifted
+    public long getOriginalTime() {
+        return originalTime;
+    }
+
+    // Milliseconds the date taken has been moved by in total
+    public long getAppliedShift() {
+        return appliedShift;
+    }
+
+    // File offset of the record's value, or -1 when it is unknown
+    public long getValueOffset() {
+        return valueOffset;
+    }
+
+    // The same record at another place in the file
+    ShiftRecord at(long offset) {
+        return new ShiftRecord(originalTime, appliedShift, offset);
+    }
+
+    // The value as it is stored, without the trailing NUL
+    public String format() {
+        String date = DATE_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(originalTime),
+            ZoneId.systemDefault()));
+        return String.format("%s%s %+020d", PREFIX, date, appliedShift);
+    }
+
+    /**
+     * Reads a value written by format(), found at valueOffset. Returns null
+     * for anything else, so a tag some other program put there is ignored.
+     */
+    static ShiftRecord parse(String value, long valueOffset) {
+        if (value == null || value.length() != LENGTH || !value.startsWith(PREFIX)) {
+            return null;
+        }
+        int dateEnd = PREFIX.length() + 19;
+        if (value.charAt(dateEnd) != ' ') {
+            return null;
+        }
+        try {
+            long originalTime = LocalDateTime.parse(value.substring(PREFIX.length(), dateEnd), DATE_FORMAT)
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+            return new ShiftRecord(originalTime, Long.parseLong(value.substring(dateEnd + 1)), valueOffset);
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
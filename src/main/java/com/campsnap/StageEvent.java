@@ -0,0 +1,31 @@
+package com.campsnap;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one stage of reading or writing one photo.
+ * Recorded with {@code -XX:StartFlightRecording} or from JDK Mission Control;
+ * costs next to nothing when no recording is running.
+ */
+@Name("com.campsnap.Stage")
+@Label("Photo Stage")
+@Category("CampSnap")
+@Description("One stage of scanning or updating a photo")
+@StackTrace(false)
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("File")
+    String path;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,85 @@
+package com.campsnap;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Shows the per-stage timings of one scan or update run as a table, with a
+ * button to save them as JSON.
+ */
+public class StageSummaryPanel extends JPanel {
+    private static final String[] COLUMN_NAMES = {"Stage", "Files", "Total (ms)", "p50 (ms)", "p99 (ms)", "Data (MB)"};
+
+    public StageSummaryPanel(StageTimings timings, String run) {
+        super(new BorderLayout(0, 5));
+
+        List<Object[]> rows = new ArrayList<>();
+        for (StageTimings.Stage stage : StageTimings.Stage.values()) {
+            long count = timings.getCount(stage);
+            if (count > 0) {
+                rows.add(new Object[] {
+                    stage.getLabel(),
+                    count,
+                    timings.getTotalNanos(stage) / 1_000_000,
+                    String.format("%.2f", timings.getPercentileNanos(stage, 0.50) / 1_000_000.0),
+                    String.format("%.2f", timings.getPercentileNanos(stage, 0.99) / 1_000_000.0),
+                    String.format("%.1f", timings.getBytes(stage) / (1024.0 * 1024.0))
+                });
+            }
+        }
+
+        JTable table = new JTable(new DefaultTableModel(rows.toArray(new Object[0][]), COLUMN_NAMES) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        });
+        table.setPreferredScrollableViewportSize(new Dimension(520, table.getRowHeight() * Math.max(rows.size(), 1)));
+
+        JLabel rateLabel = new JLabel(String.format("%d files in %.1f s (%.1f files/sec)",
+            timings.getFileCount(), timings.getElapsedNanos() / 1_000_000_000.0, timings.getFilesPerSecond()));
+
+        JButton exportButton = new JButton("Export JSON...");
+        exportButton.addActionListener(e -> exportJson(timings, run));
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        buttonPanel.add(exportButton);
+
+        add(rateLabel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    private void exportJson(StageTimings timings, String run) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Stage Timings");
+        chooser.setSelectedFile(new File(run + "-timings.json"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            Files.write(chooser.getSelectedFile().toPath(), timings.toJson(run).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                "Could not save the timings: " + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
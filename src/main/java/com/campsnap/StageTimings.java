@@ -0,0 +1,204 @@
+package com.campsnap;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates how long each stage of scanning or updating photos took, across
+ * all files and threads of a run, with latency percentiles and bytes moved.
+ *
+ * Every measured stage is also emitted as a Flight Recorder event, so a slow
+ * run can be broken down file by file in a recording.
+ */
+public class StageTimings {
+    public enum Stage {
+        READ("Read"),
+        PARSE("Parse"),
+        FALLBACK("Full metadata read"),
+        BUILD("Build metadata"),
+        PATCH("Patch"),
+        REWRITE("Rewrite"),
+        WRITE("Write"),
+        MOVE("Move"),
+        VERIFY("Verify");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * A stage in progress, returned by start() and passed to end().
+     */
+    public static final class Span {
+        private final Stage stage;
+        private final long startNanos;
+        private final StageEvent event;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.event = new StageEvent();
+            this.event.begin();
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    // Measures nothing, for reads that are not part of a run
+    static final StageTimings NONE = new StageTimings(false);
+
+    private final boolean enabled;
+    private final Map<Stage, LongAdder> nanos = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> counts = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> bytes = new EnumMap<>(Stage.class);
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final LongAdder files = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    public StageTimings() {
+        this(true);
+    }
+
+    private StageTimings(boolean enabled) {
+        this.enabled = enabled;
+        for (Stage stage : Stage.values()) {
+            nanos.put(stage, new LongAdder());
+            counts.put(stage, new LongAdder());
+            bytes.put(stage, new LongAdder());
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public Span start(Stage stage) {
+        return enabled ? new Span(stage) : null;
+    }
+
+    public void end(Span span, File file) {
+        end(span, file, 0);
+    }
+
+    // Records a finished stage, with the number of photo bytes it read or wrote
+    public void end(Span span, File file, long byteCount) {
+        if (span == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - span.startNanos;
+        nanos.get(span.stage).add(elapsed);
+        counts.get(span.stage).increment();
+        bytes.get(span.stage).add(byteCount);
+        histograms.get(span.stage).record(elapsed);
+
+        StageEvent event = span.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = span.stage.getLabel();
+            event.path = file.getPath();
+            event.bytes = byteCount;
+            event.commit();
+        }
+    }
+
+    // Counts one photo as done, for the files per second rate
+    public void fileFinished() {
+        files.increment();
+    }
+
+    // Stops the clock for the rate; until then it is measured up to now
+    public void finish() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public long getCount(Stage stage) {
+        return counts.get(stage).sum();
+    }
+
+    public long getTotalNanos(Stage stage) {
+        return nanos.get(stage).sum();
+    }
+
+    public long getBytes(Stage stage) {
+        return bytes.get(stage).sum();
+    }
+
+    // Estimated duration of the stage at the given fraction, e.g. 0.5 for the median
+    public long getPercentileNanos(Stage stage, double fraction) {
+        return histograms.get(stage).percentile(fraction);
+    }
+
+    public long getFileCount() {
+        return files.sum();
+    }
+
+    public long getElapsedNanos() {
+        long end = endNanos;
+        return (end != 0 ? end : System.nanoTime()) - startNanos;
+    }
+
+    public double getFilesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed > 0 ? getFileCount() * 1_000_000_000.0 / elapsed : 0;
+    }
+
+    // One line per stage that ran, e.g. "Read: 120 files, 340 ms (p50 2.1 ms, p99 9.8 ms), 7.5 MB"
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+            if (count > 0) {
+                summary.append(String.format("%s: %d files, %d ms (p50 %.1f ms, p99 %.1f ms)",
+                    stage.getLabel(), count, getTotalNanos(stage) / 1_000_000,
+                    getPercentileNanos(stage, 0.50) / 1_000_000.0,
+                    getPercentileNanos(stage, 0.99) / 1_000_000.0));
+                if (getBytes(stage) > 0) {
+                    summary.append(String.format(", %.1f MB", getBytes(stage) / (1024.0 * 1024.0)));
+                }
+                summary.append(System.lineSeparator());
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * The run as a JSON object, for dashboards. Durations are in microseconds.
+     */
+    public String toJson(String run) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"run\": \"").append(run).append("\",\n");
+        json.append("  \"files\": ").append(getFileCount()).append(",\n");
+        json.append("  \"elapsedMicros\": ").append(getElapsedNanos() / 1_000).append(",\n");
+        json.append("  \"filesPerSecond\": ")
+            .append(String.format(Locale.ROOT, "%.1f", getFilesPerSecond())).append(",\n");
+        json.append("  \"stages\": [");
+        boolean first = true;
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+            if (count == 0) {
+                continue;
+            }
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    {\"stage\": \"").append(stage.name().toLowerCase(Locale.ROOT)).append('"')
+                .append(", \"count\": ").append(count)
+                .append(", \"totalMicros\": ").append(getTotalNanos(stage) / 1_000)
+                .append(", \"p50Micros\": ").append(getPercentileNanos(stage, 0.50) / 1_000)
+                .append(", \"p99Micros\": ").append(getPercentileNanos(stage, 0.99) / 1_000)
+                .append(", \"bytes\": ").append(getBytes(stage))
+                .append('}');
+        }
+        json.append(first ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package com.campsnap;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+/**
+ * Measures how long the application takes to start: from the JVM starting
+ * until the window is shown, until the first photo of a folder appears in the
+ * table and until the whole folder is scanned. Each run needs a fresh JVM
+ * started with the same options as the launch scripts, for example
+ *
+ *   java -XX:SharedArchiveFile=camp-snap-time-taken-updater.jsa
+ *        -cp camp-snap-time-taken-updater.jar com.campsnap.StartupProbe photos
+ *
+ * With --train it scans and copies a few generated photos instead and then
+ * exits, so a run under -XX:ArchiveClassesAtExit records the classes of a
+ * typical session in a class data sharing archive. Without a display the
+ * training scans without opening the window.
+ */
+public class StartupProbe {
+    private static final int TRAINING_PHOTOS = 20;
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private static volatile long windowShownAt;
+    private static volatile long firstRowAt;
+    private static volatile long allRowsAt;
+
+    public static void main(String[] args) throws Exception {
+        boolean train = args.length > 0 && args[0].equals("--train");
+        int folderArg = train ? 1 : 0;
+        if (args.length > folderArg + 1) {
+            System.err.println("Usage: StartupProbe [--train] [folder]");
+            System.exit(2);
+        }
+
+        Path trainingDir = null;
+        File[] files = null;
+        if (args.length > folderArg) {
+            try (Stream<File> found = PhotoFiles.find(List.of(args[folderArg]), false)) {
+                files = found.toArray(File[]::new);
+            }
+        } else if (train) {
+            trainingDir = Files.createTempDirectory("campsnap-training");
+            files = createTrainingPhotos(trainingDir.toFile());
+        }
+
+        try {
+            if (GraphicsEnvironment.isHeadless()) {
+                if (!train) {
+                    System.err.println("The startup probe needs a display");
+                    System.exit(1);
+                }
+                scanWithoutWindow(files);
+            } else {
+                openWindow(files);
+            }
+            if (train && files != null) {
+                copyPhotos(files);
+            }
+        } finally {
+            if (trainingDir != null) {
+                deleteRecursively(trainingDir);
+            }
+        }
+
+        if (!train) {
+            // Asked for only now, so the management classes don't count towards the start
+            long startedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.printf("Window shown: %d ms%n", windowShownAt - startedAt);
+            if (files != null) {
+                System.out.printf("First photo scanned: %d ms%n", firstRowAt - startedAt);
+                System.out.printf("All %d photos scanned: %d ms%n", files.length, allRowsAt - startedAt);
+            }
+        }
+        System.exit(0);
+    }
+
+    // Opens the window as Launcher does and scans files once it is shown
+    private static void openWindow(File[] files) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            MainWindow window = new MainWindow();
+            window.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    windowShownAt = System.currentTimeMillis();
+                    if (files == null || files.length == 0) {
+                        done.countDown();
+                        return;
+                    }
+                    PhotoTableModel model = window.getTableModel();
+                    model.addTableModelListener(event -> {
+                        int rows = model.getRowCount();
+                        if (rows > 0 && firstRowAt == 0) {
+                            firstRowAt = System.currentTimeMillis();
+                        }
+                        if (rows == files.length && allRowsAt == 0) {
+                            allRowsAt = System.currentTimeMillis();
+                            done.countDown();
+                        }
+                    });
+                    window.processPhotos(files);
+                }
+            });
+            window.setVisible(true);
+        });
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println("Gave up waiting for the scan to finish");
+            System.exit(1);
+        }
+    }
+
+    private static void scanWithoutWindow(File[] files) throws InterruptedException {
+        if (files != null) {
+            PhotoScanner scanner =
+                new PhotoScanner(new MetadataCache(), PhotoScanner.defaultThreadCount(), new StageTimings());
+            scanner.scan(List.of(files), photo -> { });
+        }
+    }
+
+    // Copies the photos with a shifted date, which loads what an update needs
+    private static void copyPhotos(File[] files) throws Exception {
+        Path copyDir = Files.createTempDirectory("campsnap-training-copy");
+        try {
+            PhotoWriter writer = new PhotoWriter(24L * 60 * 60 * 1000, new StageTimings());
+            for (File file : files) {
+                ScannedPhoto photo = PhotoScanner.readPhoto(file);
+                if (photo.hasOriginalDate()) {
+                    writer.copyTo(photo, copyDir.resolve(file.getName()).toFile());
+                }
+            }
+        } finally {
+            deleteRecursively(copyDir);
+        }
+    }
+
+    // Writes small JPEGs and gives each a date the way an update would
+    private static File[] createTrainingPhotos(File dir) throws Exception {
+        PhotoWriter writer = new PhotoWriter(0, StageTimings.NONE);
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        long time = System.currentTimeMillis();
+        List<File> photos = new ArrayList<>();
+        for (int i = 0; i < TRAINING_PHOTOS; i++) {
+            image.setRGB(i, i, 0xFFFFFF);
+            File plain = new File(dir, String.format("plain_%04d.jpg", i));
+            ImageIO.write(image, "jpg", plain);
+            File photo = new File(dir, String.format("IMG_%04d.jpg", i));
+            writer.copyTo(new ScannedPhoto(plain, time + i * 1000L), photo);
+            Files.delete(plain.toPath());
+            photos.add(photo);
+        }
+        return photos.toArray(new File[0]);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
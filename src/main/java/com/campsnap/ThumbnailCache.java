@@ -0,0 +1,150 @@
+package com.campsnap;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Small previews of photos for the table, loaded in the background from the
+ * thumbnail embedded in each photo's EXIF segment.
+ *
+ * Only photos whose cell is painted are requested, and the most recent
+ * requests are served first, so while scrolling the rows on screen load
+ * before rows that have already scrolled past. Requests beyond a small
+ * backlog are dropped. Loaded previews are kept in a least recently used
+ * cache limited by the memory their pixels take.
+ *
+ * get() and clear() must be called on the Event Dispatch Thread.
+ */
+public class ThumbnailCache {
+    // Shown for photos that have no embedded thumbnail
+    public static final Icon NONE = new ImageIcon(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+
+    private static final int MAX_QUEUED = 128;
+    private static final int LOADER_THREADS = 2;
+
+    private final int height;
+    private final long maxBytes;
+    private final Runnable loaded;
+
+    private final LinkedHashMap<File, Icon> icons = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+
+    private final LinkedBlockingDeque<File> requests = new LinkedBlockingDeque<>();
+    private final Set<File> requested = new HashSet<>();
+
+    /**
+     * Creates a cache of previews scaled to the given height, holding at most
+     * maxBytes of pixels. loaded runs on the Event Dispatch Thread whenever a
+     * preview becomes available.
+     */
+    public ThumbnailCache(int height, long maxBytes, Runnable loaded) {
+        this.height = height;
+        this.maxBytes = maxBytes;
+        this.loaded = loaded;
+        for (int i = 0; i < LOADER_THREADS; i++) {
+            Thread loader = new Thread(this::loadRequests, "thumbnail-loader");
+            loader.setDaemon(true);
+            loader.setPriority(Thread.MIN_PRIORITY);
+            loader.start();
+        }
+    }
+
+    /**
+     * Returns the preview of a photo, NONE if it has no thumbnail, or null
+     * while it is still being loaded.
+     */
+    public Icon get(File file) {
+        Icon icon = icons.get(file);
+        if (icon != null) {
+            return icon;
+        }
+        if (requested.add(file)) {
+            requests.offerFirst(file);
+            if (requests.size() > MAX_QUEUED) {
+                // The oldest request is for a row that has most likely scrolled away
+                File dropped = requests.pollLast();
+                if (dropped != null) {
+                    requested.remove(dropped);
+                }
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        icons.clear();
+        usedBytes = 0;
+        requests.clear();
+        requested.clear();
+    }
+
+    private void loadRequests() {
+        while (true) {
+            File file;
+            try {
+                file = requests.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Icon icon = load(file);
+            SwingUtilities.invokeLater(() -> {
+                if (requested.remove(file)) {
+                    put(file, icon);
+                    loaded.run();
+                }
+            });
+        }
+    }
+
+    private Icon load(File file) {
+        try {
+            byte[] thumbnail = ExifThumbnailReader.read(file);
+            BufferedImage image = thumbnail != null ? ImageIO.read(new ByteArrayInputStream(thumbnail)) : null;
+            return image != null ? new ImageIcon(scale(image)) : NONE;
+        } catch (IOException | RuntimeException e) {
+            // A damaged thumbnail only costs the preview
+            return NONE;
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+        int width = Math.max(1, image.getWidth() * height / Math.max(1, image.getHeight()));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private void put(File file, Icon icon) {
+        icons.put(file, icon);
+        usedBytes += sizeOf(icon);
+
+        Iterator<Map.Entry<File, Icon>> eldest = icons.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    // Pixels are stored as four bytes each
+    private static long sizeOf(Icon icon) {
+        return 4L * icon.getIconWidth() * icon.getIconHeight();
+    }
+}